@@ -121,7 +121,7 @@ public class MainActivity extends ListActivity implements
                 dir + " swipe Action triggered on "+mAdapter.getItem(position),
                 Toast.LENGTH_SHORT
         ).show();
-        mAdapter.notifyDataSetChanged();
+        mAdapter.rebindView(position);
 
         return output;
     }
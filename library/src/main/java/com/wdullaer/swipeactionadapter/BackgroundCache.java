@@ -0,0 +1,97 @@
+/*
+ * Copyright 2014 Wouter Dullaert
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wdullaer.swipeactionadapter;
+
+import android.content.Context;
+import android.view.View;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps inflated backgrounds that are not attached to a row, keyed by the layout they were
+ * inflated from. Rows that switch backgrounds hand their old one in here and take the new one
+ * out, so switching back and forth doesn't inflate anything. When the cache is full the views
+ * of the least recently used layout are dropped first.
+ */
+class BackgroundCache {
+    private final LinkedHashMap<Integer, List<View>> mViews =
+            new LinkedHashMap<Integer, List<View>>(8, 0.75f, true);
+    private final int mMaxSize;
+    private int mSize;
+
+    BackgroundCache(int maxSize) {
+        mMaxSize = maxSize;
+    }
+
+    /**
+     * Take a background out of the cache, or inflate a new one if there is none
+     *
+     * @param context the context to inflate with
+     * @param resId the layout of the background
+     * @return a background that isn't attached to any row
+     */
+    View obtain(Context context, int resId) {
+        List<View> views = mViews.get(resId);
+        if (views != null && !views.isEmpty()) {
+            mSize--;
+            return views.remove(views.size() - 1);
+        }
+        return View.inflate(context, resId, null);
+    }
+
+    /**
+     * Hand a background that was removed from its row back to the cache
+     *
+     * @param resId the layout the background was inflated from
+     * @param view the background
+     */
+    void release(int resId, View view) {
+        List<View> views = mViews.get(resId);
+        if (views == null) {
+            views = new ArrayList<View>(2);
+            mViews.put(resId, views);
+        }
+        views.add(view);
+        mSize++;
+        trimToSize(mMaxSize);
+    }
+
+    /**
+     * Drop cached backgrounds, least recently used layouts first
+     *
+     * @param maxSize the number of backgrounds to keep at most
+     */
+    void trimToSize(int maxSize) {
+        Iterator<Map.Entry<Integer, List<View>>> entries = mViews.entrySet().iterator();
+        while (mSize > maxSize && entries.hasNext()) {
+            List<View> views = entries.next().getValue();
+            while (mSize > maxSize && !views.isEmpty()) {
+                views.remove(views.size() - 1);
+                mSize--;
+            }
+            if (views.isEmpty()) entries.remove();
+        }
+    }
+
+    int size() {
+        return mSize;
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2014 Wouter Dullaert
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wdullaer.swipeactionadapter;
+
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.view.Choreographer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link FrameClock} that is synced with the display through the {@link Choreographer}.
+ * The Choreographer is only available from API level 16 on, older versions fall back to posting
+ * a frame every 16ms on the main thread.
+ */
+public class ChoreographerFrameClock implements FrameClock {
+    private static final long FALLBACK_FRAME_DELAY = 16;
+
+    private final List<FrameCallback> mCallbacks = new ArrayList<FrameCallback>();
+    private final List<FrameCallback> mDispatching = new ArrayList<FrameCallback>();
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final Runnable mFallbackFrame = new Runnable() {
+        @Override
+        public void run() {
+            doFrame(System.nanoTime());
+        }
+    };
+    private Object mChoreographerFrame;
+    private boolean mScheduled = false;
+
+    @Override
+    public long nanoTime(){
+        // The Choreographer uses the same time base
+        return System.nanoTime();
+    }
+
+    @Override
+    public void postFrameCallback(FrameCallback callback){
+        mCallbacks.add(callback);
+        if(mScheduled) return;
+
+        mScheduled = true;
+        if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            if(mChoreographerFrame == null) mChoreographerFrame = new ChoreographerFrame(this);
+            Choreographer.getInstance().postFrameCallback((Choreographer.FrameCallback) mChoreographerFrame);
+        }
+        else mHandler.postDelayed(mFallbackFrame, FALLBACK_FRAME_DELAY);
+    }
+
+    @Override
+    public void removeFrameCallback(FrameCallback callback){
+        mCallbacks.remove(callback);
+    }
+
+    private void doFrame(long frameTimeNanos){
+        mScheduled = false;
+
+        // Callbacks are allowed to post themselves again
+        mDispatching.addAll(mCallbacks);
+        mCallbacks.clear();
+        for(int i=0;i<mDispatching.size();i++){
+            mDispatching.get(i).doFrame(frameTimeNanos);
+        }
+        mDispatching.clear();
+    }
+
+    /**
+     * Kept in a separate class so the Choreographer only gets loaded on versions that have it
+     */
+    private static class ChoreographerFrame implements Choreographer.FrameCallback {
+        private final ChoreographerFrameClock mClock;
+
+        ChoreographerFrame(ChoreographerFrameClock clock){
+            mClock = clock;
+        }
+
+        @Override
+        public void doFrame(long frameTimeNanos){
+            mClock.doFrame(frameTimeNanos);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2014 Wouter Dullaert
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wdullaer.swipeactionadapter;
+
+import android.widget.AbsListView;
+
+/**
+ * An {@link AbsListView.OnScrollListener} that passes every scroll event on to any number of
+ * other listeners, since a ListView only takes a single one.
+ * The listeners are kept in an array that is only copied when a listener is added or removed,
+ * so dispatching doesn't allocate and listeners can safely remove themselves while being called.
+ */
+public class CompositeScrollListener implements AbsListView.OnScrollListener {
+    private AbsListView.OnScrollListener[] mListeners = new AbsListView.OnScrollListener[0];
+
+    /**
+     * Add a listener. Listeners are called in the order in which they were added.
+     *
+     * @param listener the listener to add
+     * @return A reference to the current instance so that commands can be chained
+     */
+    public CompositeScrollListener addListener(AbsListView.OnScrollListener listener){
+        if(listener == null || indexOf(listener) >= 0) return this;
+
+        AbsListView.OnScrollListener[] listeners = new AbsListView.OnScrollListener[mListeners.length + 1];
+        System.arraycopy(mListeners, 0, listeners, 0, mListeners.length);
+        listeners[mListeners.length] = listener;
+        mListeners = listeners;
+        return this;
+    }
+
+    /**
+     * Remove a listener that was added before
+     *
+     * @param listener the listener to remove
+     * @return A reference to the current instance so that commands can be chained
+     */
+    public CompositeScrollListener removeListener(AbsListView.OnScrollListener listener){
+        int index = indexOf(listener);
+        if(index < 0) return this;
+
+        AbsListView.OnScrollListener[] listeners = new AbsListView.OnScrollListener[mListeners.length - 1];
+        System.arraycopy(mListeners, 0, listeners, 0, index);
+        System.arraycopy(mListeners, index + 1, listeners, index, listeners.length - index);
+        mListeners = listeners;
+        return this;
+    }
+
+    @Override
+    public void onScrollStateChanged(AbsListView absListView, int scrollState) {
+        AbsListView.OnScrollListener[] listeners = mListeners;
+        for(int i=0;i<listeners.length;i++){
+            listeners[i].onScrollStateChanged(absListView, scrollState);
+        }
+    }
+
+    @Override
+    public void onScroll(AbsListView absListView, int firstVisibleItem, int visibleItemCount, int totalItemCount) {
+        AbsListView.OnScrollListener[] listeners = mListeners;
+        for(int i=0;i<listeners.length;i++){
+            listeners[i].onScroll(absListView, firstVisibleItem, visibleItemCount, totalItemCount);
+        }
+    }
+
+    private int indexOf(AbsListView.OnScrollListener listener){
+        for(int i=0;i<mListeners.length;i++){
+            if(mListeners[i] == listener) return i;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2014 Wouter Dullaert
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wdullaer.swipeactionadapter;
+
+/**
+ * Source of animation frames for the settle animations of swiped rows.
+ * The default implementation is backed by the {@link android.view.Choreographer}, tests can
+ * supply their own implementation to step through an animation frame by frame.
+ */
+public interface FrameClock {
+    /**
+     * Callback that gets called on the next animation frame
+     */
+    public interface FrameCallback {
+        public void doFrame(long frameTimeNanos);
+    }
+
+    /**
+     * Returns the current time, in the same time base as the frame times
+     *
+     * @return the current time in nanoseconds
+     */
+    public long nanoTime();
+
+    /**
+     * Call the callback once, on the next animation frame
+     *
+     * @param callback the callback to call
+     */
+    public void postFrameCallback(FrameCallback callback);
+
+    /**
+     * Remove a callback that was posted but hasn't been called yet
+     *
+     * @param callback the callback to remove
+     */
+    public void removeFrameCallback(FrameCallback callback);
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2014 Wouter Dullaert
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wdullaer.swipeactionadapter;
+
+/**
+ * A small pool of reusable objects, so the touch handling doesn't allocate while swiping.
+ * It is not thread safe: only use it from the UI thread.
+ *
+ * @param <T> the type of the pooled objects
+ */
+abstract class ObjectPool<T> {
+    private final Object[] mPool;
+    private int mSize = 0;
+    private int mCreated = 0;
+
+    /**
+     * @param maxSize the maximum number of idle objects the pool holds on to
+     */
+    ObjectPool(int maxSize){
+        mPool = new Object[maxSize];
+    }
+
+    /**
+     * Create a new object when the pool is empty
+     */
+    protected abstract T create();
+
+    /**
+     * Returns an idle object from the pool, or a new one if there are none
+     */
+    @SuppressWarnings("unchecked")
+    T obtain(){
+        if(mSize == 0){
+            mCreated++;
+            return create();
+        }
+        T instance = (T) mPool[--mSize];
+        mPool[mSize] = null;
+        return instance;
+    }
+
+    /**
+     * Hand an object back to the pool. The caller must have cleared any references it holds.
+     *
+     * @param instance the object that is no longer used
+     */
+    void release(T instance){
+        if(mSize < mPool.length) mPool[mSize++] = instance;
+    }
+
+    /**
+     * Returns the number of idle objects in the pool
+     */
+    int size(){
+        return mSize;
+    }
+
+    /**
+     * Returns the number of objects the pool has created so far
+     */
+    int getCreatedCount(){
+        return mCreated;
+    }
+
+    /**
+     * Drop all idle objects
+     */
+    void clear(){
+        for(int i=0;i<mSize;i++) mPool[i] = null;
+        mSize = 0;
+    }
+}
@@ -0,0 +1,300 @@
+/*
+ * Copyright 2014 Wouter Dullaert
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wdullaer.swipeactionadapter;
+
+import android.database.DataSetObserver;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+import android.widget.AbsListView;
+import android.widget.BaseAdapter;
+import android.widget.ListView;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * DecoratorAdapter that loads the swipe eligibility of the rows around the visible part of the
+ * list on a background thread, for lists backed by large cursors where deciding whether a row can
+ * be swiped is slow on the UI thread. The eligibility is served from a small cache of loaded
+ * windows. Rows outside of the cache fall back to the SwipeActionListener on the UI thread.
+ *
+ * <p>getItem and getItemId always come from the wrapped adapter, so they match the rows that are
+ * drawn. The loader reads from its own cursor, which may see a newer version of the data until
+ * the wrapped adapter is notified of the change. To catch that, a cached row is only used when
+ * the id the loader saw matches the id of the wrapped adapter at that position.</p>
+ *
+ * <p>Windows are loaded by a {@link WindowLoader} on a single background thread, and swapped into
+ * the cache on the UI thread, so the UI thread always sees complete windows. When the cache is
+ * full the least recently used window is evicted. A change of the data set drops the cache and
+ * any window that was still being loaded.</p>
+ *
+ * <p>The adapter has to see the scroll events of the ListView to know where to prefetch: add it
+ * with {@link SwipeActionAdapter#addOnScrollListener(AbsListView.OnScrollListener)}. Call
+ * {@link #shutdown()} when the list goes away to stop the background thread.</p>
+ */
+public class PrefetchingAdapter extends DecoratorAdapter implements AbsListView.OnScrollListener {
+    private static final String TAG = "PrefetchingAdapter";
+    private static final int MAX_WINDOWS = 3;
+
+    private final WindowLoader mLoader;
+    private final int mWindowSize;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, TAG);
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+    // The latest request, older requests that haven't started yet are skipped
+    private final AtomicInteger mRequestSequence = new AtomicInteger();
+
+    // Only touched on the UI thread
+    private final Window[] mWindows = new Window[MAX_WINDOWS];
+    private int mUseCounter;
+    private int mGeneration;
+    private int mPendingStart = -1;
+    private int mPendingCount;
+
+    private final DataSetObserver mDataSetObserver = new DataSetObserver() {
+        @Override
+        public void onChanged() {
+            invalidateWindows();
+        }
+
+        @Override
+        public void onInvalidated() {
+            invalidateWindows();
+        }
+    };
+
+    /**
+     * Wrap an adapter, prefetching 200 rows around the visible part of the list
+     *
+     * @param baseAdapter the adapter to wrap
+     * @param loader loads the rows on the background thread
+     */
+    public PrefetchingAdapter(BaseAdapter baseAdapter, WindowLoader loader){
+        this(baseAdapter, loader, 200);
+    }
+
+    /**
+     * Wrap an adapter
+     *
+     * @param baseAdapter the adapter to wrap
+     * @param loader loads the rows on the background thread
+     * @param windowSize the number of rows to load around the visible part of the list
+     */
+    public PrefetchingAdapter(BaseAdapter baseAdapter, WindowLoader loader, int windowSize){
+        super(baseAdapter);
+        if(windowSize < 1) throw new IllegalArgumentException("windowSize must be at least 1");
+        mLoader = loader;
+        mWindowSize = windowSize;
+        mBaseAdapter.registerDataSetObserver(mDataSetObserver);
+    }
+
+    /**
+     * Look up whether a row can be swiped in the cache
+     *
+     * @param position the position of the row in the adapter
+     * @return true or false if the row is cached, null if it isn't or the cached row is outdated
+     */
+    public Boolean getCachedActions(int position){
+        Window window = findWindow(position);
+        if(window == null) return null;
+        int index = position - window.start;
+        if(window.itemIds[index] != mBaseAdapter.getItemId(position)) return null;
+        return window.hasActions[index] ? Boolean.TRUE : Boolean.FALSE;
+    }
+
+    @Override
+    public void onScrollStateChanged(AbsListView absListView, int scrollState) {
+    }
+
+    @Override
+    public void onScroll(AbsListView absListView, int firstVisibleItem, int visibleItemCount, int totalItemCount) {
+        if(visibleItemCount == 0) return;
+
+        int headers = absListView instanceof ListView ? ((ListView) absListView).getHeaderViewsCount() : 0;
+        int count = getCount();
+        int first = Math.max(0, firstVisibleItem - headers);
+        int last = Math.min(count, first + visibleItemCount);
+        if(first >= last) return;
+
+        // Load the next window once the visible rows get within one screen of the edge
+        int margin = Math.min(visibleItemCount, mWindowSize / 4);
+        int wantedFirst = Math.max(0, first - margin);
+        int wantedLast = Math.min(count, last + margin);
+        if(covers(wantedFirst, wantedLast)) return;
+        if(mPendingStart >= 0 && mPendingStart <= wantedFirst && mPendingStart + mPendingCount >= wantedLast) return;
+
+        int start = Math.max(0, Math.min(count - mWindowSize, (first + last - mWindowSize) / 2));
+        requestWindow(start, Math.min(mWindowSize, count - start));
+    }
+
+    /**
+     * Stop the background thread and drop the cache. The adapter keeps working, but serves every
+     * row from the wrapped adapter afterwards.
+     */
+    public void shutdown(){
+        mRequestSequence.incrementAndGet();
+        mExecutor.shutdownNow();
+        mBaseAdapter.unregisterDataSetObserver(mDataSetObserver);
+        invalidateWindows();
+    }
+
+    /**
+     * Returns the number of rows that are held in the cache
+     */
+    int getCachedRowCount(){
+        int count = 0;
+        for(int i=0;i<mWindows.length;i++){
+            if(mWindows[i] != null) count += mWindows[i].count;
+        }
+        return count;
+    }
+
+    /**
+     * Drop the cache, rows are loaded again as the list scrolls
+     */
+    void trimMemory(){
+        invalidateWindows();
+    }
+
+    private void requestWindow(final int start, final int count){
+        if(mExecutor.isShutdown()) return;
+
+        mPendingStart = start;
+        mPendingCount = count;
+        final int sequence = mRequestSequence.incrementAndGet();
+        final int generation = mGeneration;
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if(mRequestSequence.get() != sequence) return;
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+
+                final Window window = new Window(start, count, generation);
+                try {
+                    mLoader.loadWindow(start, count, window.itemIds, window.hasActions);
+                } catch (RuntimeException e) {
+                    Log.w(TAG, "Could not load rows " + start + " to " + (start + count), e);
+                    // Let the next scroll ask for the range again
+                    mHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            if(mRequestSequence.get() == sequence) mPendingStart = -1;
+                        }
+                    });
+                    return;
+                }
+                mHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        swapIn(window, sequence);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Add a loaded window to the cache. Runs on the UI thread.
+     */
+    private void swapIn(Window window, int sequence){
+        if(mRequestSequence.get() == sequence) mPendingStart = -1;
+        // The data changed while the window was loading
+        if(window.generation != mGeneration) return;
+
+        int slot = 0;
+        for(int i=0;i<mWindows.length;i++){
+            if(mWindows[i] == null){
+                slot = i;
+                break;
+            }
+            if(mWindows[i].lastUsed < mWindows[slot].lastUsed) slot = i;
+        }
+        window.lastUsed = ++mUseCounter;
+        mWindows[slot] = window;
+    }
+
+    private void invalidateWindows(){
+        ++mGeneration;
+        mPendingStart = -1;
+        for(int i=0;i<mWindows.length;i++) mWindows[i] = null;
+    }
+
+    private Window findWindow(int position){
+        for(int i=0;i<mWindows.length;i++){
+            Window window = mWindows[i];
+            if(window != null && position >= window.start && position < window.start + window.count){
+                window.lastUsed = ++mUseCounter;
+                return window;
+            }
+        }
+        return null;
+    }
+
+    private boolean covers(int first, int last){
+        for(int i=0;i<mWindows.length;i++){
+            Window window = mWindows[i];
+            if(window != null && window.start <= first && window.start + window.count >= last) return true;
+        }
+        return false;
+    }
+
+    /**
+     * A range of rows that were loaded together
+     */
+    private static final class Window {
+        final int start;
+        final int count;
+        final int generation;
+        final long[] itemIds;
+        final boolean[] hasActions;
+        int lastUsed;
+
+        Window(int start, int count, int generation){
+            this.start = start;
+            this.count = count;
+            this.generation = generation;
+            itemIds = new long[count];
+            hasActions = new boolean[count];
+        }
+    }
+
+    /**
+     * Loads rows for a PrefetchingAdapter. This is called on a background thread, so it must not
+     * touch the wrapped adapter or its cursor: use a cursor or connection of its own.
+     */
+    public interface WindowLoader{
+        /**
+         * Load a range of rows into the arrays, row start + i goes into index i
+         *
+         * @param start the position of the first row in the adapter
+         * @param count the number of rows to load
+         * @param itemIds receives the ids, as getItemId of the wrapped adapter returns them
+         * @param hasActions receives whether the rows can be swiped
+         */
+        public void loadWindow(int start, int count, long[] itemIds, boolean[] hasActions);
+    }
+}
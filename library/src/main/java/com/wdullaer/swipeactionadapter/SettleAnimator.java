@@ -0,0 +1,255 @@
+/*
+ * Copyright 2014 Wouter Dullaert
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wdullaer.swipeactionadapter;
+
+import android.view.View;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Animates swiped rows to their resting position with a critically damped spring.
+ * The spring starts out with the velocity of the finger. Its stiffness is picked per animation, so
+ * that a row that is let go of at rest arrives within the animation time, whatever the distance.
+ * A fling that would cover the distance sooner at its own speed gets a stiffer spring, so it
+ * arrives at least that soon.
+ * Positions are computed in closed form from the time since the start of the animation, which
+ * keeps them exact no matter how the frames are spaced.
+ * The animation records are pooled and drop their view as soon as it has arrived.
+ */
+class SettleAnimator implements FrameClock.FrameCallback {
+    /**
+     * Listener that gets called once a view has reached its target
+     */
+    interface SettleListener {
+        void onSettled(View view);
+    }
+
+    // A view has arrived once it is closer than this to its target, in pixels
+    private static final float ARRIVE_DISTANCE = 2f;
+
+    private FrameClock mClock;
+    // In seconds
+    private final float mAnimationTime;
+    private final List<Settle> mSettles = new ArrayList<Settle>();
+    private final List<Settle> mFinished = new ArrayList<Settle>();
+    private final ObjectPool<Settle> mPool = new ObjectPool<Settle>(8) {
+        @Override
+        protected Settle create() {
+            return new Settle();
+        }
+    };
+    private boolean mScheduled = false;
+
+    /**
+     * @param clock the clock that drives the animations
+     * @param animationTime the time in milliseconds within which a view that is let go of at rest
+     *                      arrives
+     */
+    SettleAnimator(FrameClock clock, long animationTime){
+        mClock = clock;
+        mAnimationTime = Math.max(1, animationTime) / 1000f;
+    }
+
+    FrameClock getFrameClock(){
+        return mClock;
+    }
+
+    void setFrameClock(FrameClock clock){
+        if(mScheduled){
+            mClock.removeFrameCallback(this);
+            clock.postFrameCallback(this);
+        }
+        mClock = clock;
+    }
+
+    /**
+     * Animate a view to a horizontal position. Any animation that was running on the view is
+     * replaced, unless something is waiting for that animation to arrive.
+     *
+     * @param view the view to animate
+     * @param targetX the translationX to animate to
+     * @param velocityX the current velocity of the view, in pixels per second
+     * @param targetAlpha the alpha the view should have once it arrives
+     * @param listener called when the view has arrived, may be null
+     * @return true if the view is animating to the target, false if it has to finish the
+     *         animation it was already on
+     */
+    boolean settle(View view, float targetX, float velocityX, float targetAlpha, SettleListener listener){
+        Settle settle = find(view);
+        // Replacing the animation would drop the listener, which never gets called then
+        if(settle != null && settle.listener != null) return false;
+        if(settle == null){
+            settle = mPool.obtain();
+            mSettles.add(settle);
+        }
+        settle.view = view;
+        settle.startTime = mClock.nanoTime();
+        settle.startX = view.getTranslationX();
+        settle.targetX = targetX;
+        settle.velocity = velocityX;
+        settle.startAlpha = view.getAlpha();
+        settle.targetAlpha = targetAlpha;
+        settle.listener = listener;
+
+        // A fling towards the target arrives at least as soon as it would at its own speed
+        float distance = Math.abs(targetX - settle.startX);
+        float duration = mAnimationTime;
+        if(velocityX * (targetX - settle.startX) > 0) duration = Math.min(duration, distance / Math.abs(velocityX));
+        // Aim for half the arrival distance, so the frame that arrives is within the duration
+        settle.omega = decayTo(ARRIVE_DISTANCE / 2 / Math.max(distance, ARRIVE_DISTANCE)) / Math.max(duration, 0.001f);
+
+        if(!mScheduled){
+            mScheduled = true;
+            mClock.postFrameCallback(this);
+        }
+        return true;
+    }
+
+    /**
+     * Stop animating a view, unless something is waiting for it to arrive
+     *
+     * @param view the view to stop animating
+     * @return true if the view is no longer animating, false if it has to finish its animation
+     */
+    boolean cancel(View view){
+        Settle settle = find(view);
+        if(settle == null) return true;
+        if(settle.listener != null) return false;
+
+        mSettles.remove(settle);
+        release(settle);
+        return true;
+    }
+
+    /**
+     * Returns the number of views that are currently animating
+     */
+    int getRunningCount(){
+        return mSettles.size();
+    }
+
+    /**
+     * Returns the number of idle animation records that are kept for reuse
+     */
+    int getPooledCount(){
+        return mPool.size();
+    }
+
+    /**
+     * Returns the number of animation records that were created so far
+     */
+    int getCreatedCount(){
+        return mPool.getCreatedCount();
+    }
+
+    /**
+     * Drop the idle animation records
+     */
+    void trimPool(){
+        mPool.clear();
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos){
+        mScheduled = false;
+
+        for(int i=mSettles.size()-1;i>=0;i--){
+            Settle settle = mSettles.get(i);
+            float t = Math.max(0, frameTimeNanos - settle.startTime) / 1e9f;
+
+            // x(t) = target + (e0 + (v0 + w * e0) * t) * e^(-w * t)
+            float offset0 = settle.startX - settle.targetX;
+            float b = settle.velocity + settle.omega * offset0;
+            float offset = (offset0 + b * t) * (float) Math.exp(-settle.omega * t);
+
+            // A hard fling can carry the view past its target, it stops there
+            boolean passed = offset0 != 0 && Math.signum(offset) != Math.signum(offset0);
+            if(passed || Math.abs(offset) < ARRIVE_DISTANCE){
+                settle.view.setTranslationX(settle.targetX);
+                settle.view.setAlpha(settle.targetAlpha);
+                mSettles.remove(i);
+                mFinished.add(settle);
+                continue;
+            }
+
+            settle.view.setTranslationX(settle.targetX + offset);
+            if(settle.startAlpha != settle.targetAlpha){
+                float progress = Math.max(0f, Math.min(1f, 1f - offset / offset0));
+                settle.view.setAlpha(settle.startAlpha + (settle.targetAlpha - settle.startAlpha) * progress);
+            }
+        }
+
+        // Listeners may start new animations, so only call them once we're done iterating
+        for(int i=0;i<mFinished.size();i++){
+            Settle settle = mFinished.get(i);
+            View view = settle.view;
+            SettleListener listener = settle.listener;
+            release(settle);
+            if(listener != null) listener.onSettled(view);
+        }
+        mFinished.clear();
+
+        if(!mSettles.isEmpty() && !mScheduled){
+            mScheduled = true;
+            mClock.postFrameCallback(this);
+        }
+    }
+
+    private void release(Settle settle){
+        settle.view = null;
+        settle.listener = null;
+        mPool.release(settle);
+    }
+
+    /**
+     * Solve (1 + x) * e^-x = ratio for x, which is how far into its decay a spring released at rest
+     * has to be to have the given fraction of its distance left. Newton's method on
+     * ln(1 + x) - x - ln(ratio) converges in a handful of steps.
+     *
+     * @param ratio the fraction of the distance that is left, between 0 and 1
+     * @return the product of the spring's angular frequency and the time it takes
+     */
+    static float decayTo(float ratio){
+        double log = Math.log(ratio);
+        double x = 1 - log;
+        for(int i=0;i<6;i++){
+            x += (Math.log(1 + x) - x - log) * (1 + x) / x;
+        }
+        return (float) x;
+    }
+
+    private Settle find(View view){
+        for(int i=0;i<mSettles.size();i++){
+            if(mSettles.get(i).view == view) return mSettles.get(i);
+        }
+        return null;
+    }
+
+    private static class Settle {
+        View view;
+        long startTime;
+        float startX;
+        float targetX;
+        float velocity;
+        // Angular frequency of the spring, in radians per second
+        float omega;
+        float startAlpha;
+        float targetAlpha;
+        SettleListener listener;
+    }
+}
@@ -16,28 +16,60 @@
 
 package com.wdullaer.swipeactionadapter;
 
+import android.content.ComponentCallbacks2;
+import android.util.Log;
 import android.util.SparseArray;
+import android.util.SparseBooleanArray;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.AbsListView;
 import android.widget.BaseAdapter;
 import android.widget.ListView;
 
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+import java.util.WeakHashMap;
+
 /**
  * Adapter that adds support for multiple swipe actions to your ListView
  *
  * Created by wdullaer on 04.06.14.
  */
 public class SwipeActionAdapter extends DecoratorAdapter implements
-        SwipeActionTouchListener.ActionCallbacks
+        SwipeActionTouchListener.BatchActionCallbacks,
+        SwipeActionTouchListener.BackgroundCallbacks
 {
+    private static final String TAG = "SwipeActionAdapter";
+    private static final int BACKGROUND_CACHE_SIZE = 8;
+
     private ListView mListView;
     private SwipeActionTouchListener mTouchListener;
+    private AbsListView.OnScrollListener mTouchScrollListener;
+    private final CompositeScrollListener mScrollListener = new CompositeScrollListener();
     protected SwipeActionListener mSwipeActionListener;
     private boolean mFadeOut = false;
     private boolean mFixedBackgrounds = false;
+    private boolean mMultiSwipe = false;
+
+    private SwipeThresholds mThresholds = null;
+    private FrameClock mFrameClock = null;
+    private SwipeJournal mJournal = null;
+    private BackgroundResolver mBackgroundResolver = null;
+    private SwipeCoordinator mCoordinator = null;
+    // Resolved backgrounds that are not attached to a row, shared by all rows
+    private BackgroundCache mBackgroundCache = new BackgroundCache(BACKGROUND_CACHE_SIZE);
+    // Every row shell we created that hasn't been garbage collected yet
+    private final Set<SwipeViewGroup> mRows =
+            Collections.newSetFromMap(new WeakHashMap<SwipeViewGroup, Boolean>());
 
-    protected SparseArray<Integer> mBackgroundResIds = new SparseArray<Integer>();
+    // Indexed by SwipeDirections.toIndex(direction), 0 means no background
+    protected int[] mBackgroundResIds = new int[5];
+    // Background sets of view types that don't use the default set, same indexing
+    protected SparseArray<int[]> mTypeBackgroundResIds = new SparseArray<int[]>();
+    // View types whose rows can't be swiped, these are not wrapped in a SwipeViewGroup
+    protected SparseBooleanArray mUnswipeableTypes = new SparseBooleanArray();
 
     public SwipeActionAdapter(BaseAdapter baseAdapter){
         super(baseAdapter);
@@ -46,15 +78,30 @@ public class SwipeActionAdapter extends DecoratorAdapter implements
     @Override
     public View getView(final int position, final View convertView, final ViewGroup parent){
         // TODO: add our custom background images here (provide some good defaults)
-        SwipeViewGroup output = (SwipeViewGroup)convertView;
+        int viewType = super.getItemViewType(position);
+        if(mUnswipeableTypes.get(viewType)){
+            // Don't hand a shell to the wrapped adapter if ListView mixed up the types
+            return super.getView(position, convertView instanceof SwipeViewGroup ? null : convertView, parent);
+        }
+
+        SwipeViewGroup output = null;
+        if(convertView instanceof SwipeViewGroup && ((SwipeViewGroup)convertView).getViewType() == viewType){
+            output = (SwipeViewGroup)convertView;
+        }
 
         if(output == null) {
             output = new SwipeViewGroup(parent.getContext());
-            for (int i = 0; i < mBackgroundResIds.size(); i++) {
-                output.addBackground(View.inflate(parent.getContext(),mBackgroundResIds.valueAt(i), null),mBackgroundResIds.keyAt(i));
+            output.setViewType(viewType);
+            mRows.add(output);
+            // With a resolver the backgrounds are only added once a swipe needs them
+            int[] resIds = mBackgroundResolver == null ? getBackgroundResIds(viewType) : new int[0];
+            for (int i = 0; i < resIds.length; i++) {
+                if (resIds[i] == 0) continue;
+                output.replaceBackground(View.inflate(parent.getContext(),resIds[i], null),SwipeDirections.fromIndex(i),resIds[i]);
             }
         }
 
+        output.setFixedBackgrounds(mFixedBackgrounds);
         output.setContentView(super.getView(position,output.getContentView(),parent));
 
         return output;
@@ -62,14 +109,24 @@ public class SwipeActionAdapter extends DecoratorAdapter implements
 
     /**
      * SwipeActionTouchListener.ActionCallbacks callback
-     * We just link it through to our own interface
+     * We just link it through to our own interface, unless the wrapped PrefetchingAdapter already
+     * knows the answer
      *
      * @param position the position of the item that was swiped
      * @return boolean indicating whether the item has actions
      */
     @Override
     public boolean hasActions(int position){
-        return mSwipeActionListener != null && mSwipeActionListener.hasActions(position);
+        if(mSwipeActionListener == null) return false;
+        int adapterPosition = mListView == null ? position : position - mListView.getHeaderViewsCount();
+        if(mUnswipeableTypes.size() > 0 && adapterPosition >= 0 && adapterPosition < getCount()
+                && mUnswipeableTypes.get(getItemViewType(adapterPosition))) return false;
+        if(mBaseAdapter instanceof PrefetchingAdapter){
+            // Rows that were prefetched don't need to ask the listener on the UI thread
+            Boolean cached = ((PrefetchingAdapter) mBaseAdapter).getCachedActions(adapterPosition);
+            if(cached != null) return cached;
+        }
+        return mSwipeActionListener.hasActions(position);
     }
 
     /**
@@ -84,7 +141,122 @@ public class SwipeActionAdapter extends DecoratorAdapter implements
      */
     @Override
     public boolean onAction(ListView listView, int position, int direction){
-        return mSwipeActionListener != null && mSwipeActionListener.onSwipe(position,direction);
+        if(mSwipeActionListener == null) return false;
+        journal(listView, position, direction, System.currentTimeMillis());
+        return mSwipeActionListener.onSwipe(position,direction);
+    }
+
+    /**
+     * SwipeActionTouchListener.BatchActionCallbacks callback
+     * A BatchSwipeActionListener gets the whole batch in one call, any other listener gets called
+     * once for every position.
+     *
+     * @param listView The originating {@link ListView}.
+     * @param positions The positions to perform the action on, sorted in descending order
+     *                  for convenience.
+     * @param direction The type of swipe that triggered the action
+     * @return for each position whether the item should be dismissed afterwards or not
+     */
+    @Override
+    public boolean[] onActions(ListView listView, int[] positions, int direction){
+        boolean[] output = new boolean[positions.length];
+        if(mSwipeActionListener == null) return output;
+
+        long now = System.currentTimeMillis();
+        for(int i=0;i<positions.length;i++) journal(listView, positions[i], direction, now);
+
+        if(mSwipeActionListener instanceof BatchSwipeActionListener){
+            boolean dismiss = ((BatchSwipeActionListener)mSwipeActionListener).onSwipe(positions,direction);
+            Arrays.fill(output,dismiss);
+        }
+        else {
+            for(int i=0;i<positions.length;i++){
+                output[i] = mSwipeActionListener.onSwipe(positions[i],direction);
+            }
+        }
+        return output;
+    }
+
+    /**
+     * SwipeActionTouchListener.BackgroundCallbacks callback
+     * Asks the BackgroundResolver which background the row needs and swaps it in, reusing
+     * backgrounds from the shared cache where possible
+     *
+     * @param group The row that is being swiped.
+     * @param position The position of the row.
+     * @param direction The direction whose background is about to be shown
+     */
+    @Override
+    public void prepareBackground(SwipeViewGroup group, int position, int direction){
+        if(mBackgroundResolver == null) return;
+
+        int resId = mBackgroundResolver.getBackground(position, direction);
+        if(resId == 0){
+            // Fall back to the backgrounds that were added for this view type
+            int[] resIds = getBackgroundResIds(group.getViewType());
+            int index = SwipeDirections.toIndex(direction);
+            resId = index < resIds.length ? resIds[index] : 0;
+        }
+
+        int currentResId = group.getBackgroundResId(direction);
+        if(currentResId == resId && group.getBackgroundView(direction) != null) return;
+
+        View background = resId == 0 ? null : mBackgroundCache.obtain(group.getContext(), resId);
+        View previous = group.replaceBackground(background, direction, resId);
+        if(previous != null && currentResId != 0) mBackgroundCache.release(currentResId, previous);
+    }
+
+    /**
+     * Write an action to the journal, if there is one, before the listener gets to see it
+     */
+    private void journal(ListView listView, int position, int direction, long timestamp){
+        if(mJournal == null) return;
+        try {
+            mJournal.append(listView.getItemIdAtPosition(position), direction, timestamp);
+        } catch (IOException e) {
+            Log.e(TAG, "Could not write swipe action to the journal", e);
+        }
+    }
+
+    /**
+     * Perform a swipe action on a set of items, as if the user had swiped them.
+     * The visible items are swiped out and collapsed together in a single animation, items that are
+     * offscreen are not animated. The SwipeActionListener is called once for the whole batch if it
+     * is a BatchSwipeActionListener.
+     * You must call setListView before using this method.
+     *
+     * @param positions the positions of the items in the ListView
+     * @param direction the direction of the swipe, one of the SwipeDirections constants
+     * @return A reference to the current instance so that commands can be chained
+     */
+    public SwipeActionAdapter performSwipe(int[] positions, int direction){
+        if(mListView == null || direction == SwipeDirections.DIRECTION_NEUTRAL) return this;
+        mTouchListener.performActions(positions,direction);
+        return this;
+    }
+
+    /**
+     * Perform a swipe action on a set of items identified by their id.
+     * This is most useful when the wrapped adapter has stable ids.
+     *
+     * @param ids the ids of the items, as returned by getItemId
+     * @param direction the direction of the swipe, one of the SwipeDirections constants
+     * @return A reference to the current instance so that commands can be chained
+     * @see #performSwipe(int[], int)
+     */
+    public SwipeActionAdapter performSwipeById(long[] ids, int direction){
+        if(mListView == null || ids.length == 0) return this;
+
+        long[] sortedIds = ids.clone();
+        Arrays.sort(sortedIds);
+
+        int[] positions = new int[ids.length];
+        int found = 0;
+        int headers = mListView.getHeaderViewsCount();
+        for(int i=0;i<getCount() && found<positions.length;i++){
+            if(Arrays.binarySearch(sortedIds,getItemId(i)) >= 0) positions[found++] = i + headers;
+        }
+        return performSwipe(found == positions.length ? positions : Arrays.copyOf(positions,found),direction);
     }
 
     /**
@@ -111,6 +283,92 @@ public class SwipeActionAdapter extends DecoratorAdapter implements
         return this;
     }
 
+    /**
+     * Set whether the user can swipe several rows at once by dragging up or down across them after
+     * starting a swipe. All swiped rows are reported in a single batch.
+     * The default value for this property is false
+     *
+     * @param mMultiSwipe true to allow swiping multiple rows in one gesture
+     * @return A reference to the current instance so that commands can be chained
+     */
+    public SwipeActionAdapter setMultiSwipe(boolean mMultiSwipe){
+        this.mMultiSwipe = mMultiSwipe;
+        if(mListView != null) mTouchListener.setMultiSwipe(mMultiSwipe);
+        return this;
+    }
+
+    /**
+     * Set the clock that drives the animations of swiped rows. The default clock is synced with
+     * the display, you should only need this to control the animations from a test.
+     *
+     * @param mFrameClock the clock to use
+     * @return A reference to the current instance so that commands can be chained
+     */
+    public SwipeActionAdapter setFrameClock(FrameClock mFrameClock){
+        this.mFrameClock = mFrameClock;
+        if(mListView != null) mTouchListener.setFrameClock(mFrameClock);
+        return this;
+    }
+
+    /**
+     * Set a journal to record every swipe action in before it is passed to the SwipeActionListener.
+     * The item id that is recorded is the one returned by the wrapped adapter, so the wrapped
+     * adapter should have stable ids. Opening, committing and compacting the journal is up to you:
+     * once the listener has stored the actions it was handed, commit up to
+     * {@link SwipeJournal#getLastSequence()}. The actions are written on a background thread.
+     *
+     * @param mJournal the journal to write to, or null to stop journaling
+     * @return A reference to the current instance so that commands can be chained
+     * @see SwipeJournal
+     */
+    public SwipeActionAdapter setSwipeJournal(SwipeJournal mJournal){
+        this.mJournal = mJournal;
+        return this;
+    }
+
+    /**
+     * Share the touch configuration, animations and background cache of this adapter with other
+     * adapters that use the same coordinator. Only one row across all of their lists can be
+     * swiped at a time.
+     *
+     * @param mCoordinator the coordinator to share, or null to stop sharing
+     * @return A reference to the current instance so that commands can be chained
+     * @see SwipeCoordinator
+     */
+    public SwipeActionAdapter setSwipeCoordinator(SwipeCoordinator mCoordinator){
+        this.mCoordinator = mCoordinator;
+        mBackgroundCache = mCoordinator != null
+                ? mCoordinator.getBackgroundCache()
+                : new BackgroundCache(BACKGROUND_CACHE_SIZE);
+        // Swap in a touch listener that uses the coordinator
+        if(mListView != null) setListView(mListView);
+        return this;
+    }
+
+    /**
+     * Add a listener for scroll events of the ListView. The adapter needs the only
+     * OnScrollListener slot of the ListView for itself, so use this instead of
+     * ListView.setOnScrollListener. Scroll events are passed on without allocating anything.
+     *
+     * @param listener the listener to add
+     * @return A reference to the current instance so that commands can be chained
+     */
+    public SwipeActionAdapter addOnScrollListener(AbsListView.OnScrollListener listener){
+        mScrollListener.addListener(listener);
+        return this;
+    }
+
+    /**
+     * Remove a listener that was added with {@link #addOnScrollListener(AbsListView.OnScrollListener)}
+     *
+     * @param listener the listener to remove
+     * @return A reference to the current instance so that commands can be chained
+     */
+    public SwipeActionAdapter removeOnScrollListener(AbsListView.OnScrollListener listener){
+        mScrollListener.removeListener(listener);
+        return this;
+    }
+
     /**
      * We need the ListView to be able to modify it's OnTouchListener
      *
@@ -118,13 +376,99 @@ public class SwipeActionAdapter extends DecoratorAdapter implements
      * @return A reference to the current instance so that commands can be chained
      */
     public SwipeActionAdapter setListView(ListView mListView){
+        // The old touch listener would keep observing the list and hold on to its gestures
+        if(mTouchListener != null) mTouchListener.detach();
         this.mListView = mListView;
-        mTouchListener = new SwipeActionTouchListener(mListView,this);
+        mTouchListener = new SwipeActionTouchListener(mListView,this,mCoordinator);
         this.mListView.setOnTouchListener(mTouchListener);
-        this.mListView.setOnScrollListener(mTouchListener.makeScrollListener());
+        // Keep the listeners the app added when the ListView changes
+        mScrollListener.removeListener(mTouchScrollListener);
+        mTouchScrollListener = mTouchListener.makeScrollListener();
+        mScrollListener.addListener(mTouchScrollListener);
+        this.mListView.setOnScrollListener(mScrollListener);
         this.mListView.setClipChildren(false);
         mTouchListener.setFadeOut(mFadeOut);
         mTouchListener.setFixedBackgrounds(mFixedBackgrounds);
+        mTouchListener.setMultiSwipe(mMultiSwipe);
+        if(mThresholds != null) mTouchListener.setSwipeThresholds(mThresholds);
+        if(mFrameClock != null) mTouchListener.setFrameClock(mFrameClock);
+        return this;
+    }
+
+    /**
+     * Rebind a single visible row in place, without touching any of the other rows.
+     * The wrapped adapter gets the existing content view as convertView, so a well-behaved adapter
+     * only updates its contents. Nothing happens if the position is not currently on screen.
+     * Use this instead of notifyDataSetChanged when only the contents of one row have changed.
+     *
+     * @param position the position of the row in the ListView
+     * @return A reference to the current instance so that commands can be chained
+     */
+    public SwipeActionAdapter rebindView(int position){
+        if(mListView == null) return this;
+
+        int index = position - mListView.getFirstVisiblePosition();
+        if(index < 0 || index >= mListView.getChildCount()) return this;
+
+        View child = mListView.getChildAt(index);
+        if(!(child instanceof SwipeViewGroup)) return this;
+
+        SwipeViewGroup group = (SwipeViewGroup)child;
+        int adapterPosition = position - mListView.getHeaderViewsCount();
+        if(adapterPosition < 0 || adapterPosition >= getCount()) return this;
+
+        // A row that changed type needs a different shell, leave that to the ListView
+        if(group.getViewType() != getItemViewType(adapterPosition)) return this;
+
+        group.setContentView(super.getView(adapterPosition, group.getContentView(), mListView));
+        return this;
+    }
+
+    /**
+     * Take a snapshot of the views and objects the swipe layer holds on to. This only walks the
+     * rows that are alive, so it is cheap enough to call from a memory pressure handler.
+     *
+     * @return the snapshot
+     */
+    public SwipeDiagnostics getDiagnostics(){
+        int[] backgroundCounts = new int[mBackgroundResIds.length];
+        for(SwipeViewGroup row : mRows){
+            int slots = row.getBackgroundSlotCount();
+            if(slots > backgroundCounts.length) backgroundCounts = Arrays.copyOf(backgroundCounts, slots);
+            for(int i=1;i<slots;i++){
+                if(row.getBackgroundView(SwipeDirections.fromIndex(i)) != null) backgroundCounts[i]++;
+            }
+        }
+        boolean attached = mTouchListener != null;
+        return new SwipeDiagnostics(
+                mRows.size(),
+                backgroundCounts,
+                attached ? mTouchListener.getPendingDismissCount() : 0,
+                attached ? mTouchListener.getRunningAnimationCount() : 0,
+                attached ? mTouchListener.getCachedWidth() : 0,
+                attached ? mTouchListener.getCachedThresholdCount() : 0,
+                attached ? mTouchListener.getPooledCount() : 0,
+                mBackgroundCache.size(),
+                mBaseAdapter instanceof PrefetchingAdapter
+                        ? ((PrefetchingAdapter) mBaseAdapter).getCachedRowCount() : 0
+        );
+    }
+
+    /**
+     * Release memory the swipe layer can do without. Call this from onTrimMemory of your
+     * Activity or Application. Pooled records and cached backgrounds are always dropped, rows
+     * prefetched by a wrapped PrefetchingAdapter are dropped from TRIM_MEMORY_RUNNING_LOW on.
+     * Nothing that is visible or animating is touched.
+     *
+     * @param level the level passed to onTrimMemory
+     * @return A reference to the current instance so that commands can be chained
+     */
+    public SwipeActionAdapter trimMemory(int level){
+        mBackgroundCache.trimToSize(0);
+        if(mTouchListener != null) mTouchListener.trimMemory();
+        if(level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW && mBaseAdapter instanceof PrefetchingAdapter){
+            ((PrefetchingAdapter) mBaseAdapter).trimMemory();
+        }
         return this;
     }
 
@@ -139,14 +483,97 @@ public class SwipeActionAdapter extends DecoratorAdapter implements
 
     /**
      * Add a background image for a certain callback. The key for the background must be one of the
-     * directions from the SwipeDirections class.
+     * directions from the SwipeDirections class, or a higher stage if you use SwipeThresholds with
+     * more than two stages.
      *
      * @param key the identifier of the callback for which this resource should be shown
      * @param resId the resource Id of the background to add
      * @return A reference to the current instance so that commands can be chained
      */
     public SwipeActionAdapter addBackground(int key, int resId){
-        if(SwipeDirections.getAllDirections().contains(key)) mBackgroundResIds.put(key,resId);
+        if(key == SwipeDirections.DIRECTION_NEUTRAL) return this;
+
+        int index = SwipeDirections.toIndex(key);
+        if(index >= mBackgroundResIds.length){
+            int[] resIds = new int[index + 1];
+            System.arraycopy(mBackgroundResIds, 0, resIds, 0, mBackgroundResIds.length);
+            mBackgroundResIds = resIds;
+        }
+        mBackgroundResIds[index] = resId;
+        return this;
+    }
+
+    /**
+     * Add a background image for a certain callback to the rows of one view type. Once a view type
+     * has a background of its own, its rows only get the backgrounds that were added for that
+     * view type, not the ones added with {@link #addBackground(int, int)}.
+     *
+     * @param viewType the view type of the rows, as returned by getItemViewType
+     * @param key the identifier of the callback for which this resource should be shown
+     * @param resId the resource Id of the background to add
+     * @return A reference to the current instance so that commands can be chained
+     */
+    public SwipeActionAdapter addBackground(int viewType, int key, int resId){
+        if(key == SwipeDirections.DIRECTION_NEUTRAL) return this;
+
+        int index = SwipeDirections.toIndex(key);
+        int[] resIds = mTypeBackgroundResIds.get(viewType);
+        if(resIds == null || index >= resIds.length){
+            int[] grown = new int[Math.max(index + 1, 5)];
+            if(resIds != null) System.arraycopy(resIds, 0, grown, 0, resIds.length);
+            resIds = grown;
+            mTypeBackgroundResIds.put(viewType, resIds);
+        }
+        resIds[index] = resId;
+        return this;
+    }
+
+    /**
+     * Set whether the rows of a view type can be swiped. Rows that can't be swiped, like section
+     * headers or ads, are not wrapped in a SwipeViewGroup and never get any backgrounds.
+     * All view types can be swiped by default.
+     *
+     * @param viewType the view type of the rows, as returned by getItemViewType
+     * @param swipeable false to disable swiping for rows of this type
+     * @return A reference to the current instance so that commands can be chained
+     */
+    public SwipeActionAdapter setViewTypeSwipeable(int viewType, boolean swipeable){
+        if(swipeable) mUnswipeableTypes.delete(viewType);
+        else mUnswipeableTypes.put(viewType, true);
+        return this;
+    }
+
+    private int[] getBackgroundResIds(int viewType){
+        int[] resIds = mTypeBackgroundResIds.get(viewType);
+        return resIds != null ? resIds : mBackgroundResIds;
+    }
+
+    /**
+     * Set the distances at which a swipe moves from one stage (and direction) to the next.
+     * By default there are two stages per side: normal, and far from half the row width on.
+     * Dragging a row into its second stage dismisses it on release, the first stage can only be
+     * reached with a fling.
+     *
+     * @param mThresholds the thresholds to use
+     * @return A reference to the current instance so that commands can be chained
+     */
+    public SwipeActionAdapter setSwipeThresholds(SwipeThresholds mThresholds){
+        this.mThresholds = mThresholds;
+        if(mListView != null) mTouchListener.setSwipeThresholds(mThresholds);
+        return this;
+    }
+
+    /**
+     * Set a resolver that picks the background of a row when it is swiped, instead of using the
+     * same background for every row. Backgrounds are no longer inflated in getView once a
+     * resolver is set: they are looked up when a swipe engages and inflated views are shared
+     * between rows through a small cache.
+     *
+     * @param mBackgroundResolver the resolver to use, or null to only use the added backgrounds
+     * @return A reference to the current instance so that commands can be chained
+     */
+    public SwipeActionAdapter setBackgroundResolver(BackgroundResolver mBackgroundResolver){
+        this.mBackgroundResolver = mBackgroundResolver;
         return this;
     }
 
@@ -168,4 +595,29 @@ public class SwipeActionAdapter extends DecoratorAdapter implements
         public boolean hasActions(int position);
         public boolean onSwipe(int position, int direction);
     }
+
+    /**
+     * Interface to pick the background of a row when it is swiped
+     */
+    public interface BackgroundResolver{
+        /**
+         * @param position the position of the swiped row
+         * @param direction the direction of the swipe
+         * @return the layout resource id of the background, or 0 to use the background that was
+         *         added for this direction
+         */
+        public int getBackground(int position, int direction);
+    }
+
+    /**
+     * SwipeActionListener that wants to receive batches of swipe actions in a single call
+     */
+    public interface BatchSwipeActionListener extends SwipeActionListener{
+        /**
+         * @param positions the swiped positions, sorted in descending order
+         * @param direction the direction of the swipe
+         * @return true if the items should be dismissed, false if they should be shown again
+         */
+        public boolean onSwipe(int[] positions, int direction);
+    }
 }
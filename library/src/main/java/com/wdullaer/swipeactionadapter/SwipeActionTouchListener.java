@@ -17,22 +17,19 @@
 
 package com.wdullaer.swipeactionadapter;
 
-import android.animation.Animator;
-import android.animation.AnimatorListenerAdapter;
-import android.animation.ValueAnimator;
-import android.graphics.Rect;
+import android.database.DataSetObserver;
 import android.os.SystemClock;
 import android.view.MotionEvent;
 import android.view.VelocityTracker;
 import android.view.View;
 import android.view.ViewConfiguration;
 import android.view.ViewGroup;
-import android.view.ViewPropertyAnimator;
 import android.widget.AbsListView;
+import android.widget.ListAdapter;
 import android.widget.ListView;
 
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -44,9 +41,10 @@ import java.util.List;
  * <p>After creating the listener, the caller should also call
  * {@link ListView#setOnScrollListener(AbsListView.OnScrollListener)}, passing
  * in the scroll listener returned by {@link #makeScrollListener()}. If a scroll listener is
- * already assigned, the caller should still pass scroll changes through to this listener. This will
- * ensure that this {@link SwipeActionTouchListener} is paused during list view
- * scrolling.</p>
+ * already assigned, the caller should still pass scroll changes through to this listener, e.g.
+ * with a {@link CompositeScrollListener}. This will ensure that this
+ * {@link SwipeActionTouchListener} is paused during list view scrolling, and that rows which
+ * are half swiped settle back when the list is flung.</p>
  *
  * <p>Example usage:</p>
  *
@@ -66,8 +64,31 @@ import java.util.List;
  * listView.setOnScrollListener(touchListener.makeScrollListener());
  * </pre>
  *
- * <p>This class Requires API level 12 or later due to use of {@link
- * ViewPropertyAnimator}.</p>
+ * <p>With {@link #setMultiSwipe(boolean)} enabled, moving the finger up or down after a swipe
+ * has started pulls the rows it crosses into the same swipe. All of them are then handed to
+ * {@link BatchActionCallbacks#onActions(ListView, int[], int)} in a single call.</p>
+ *
+ * <p>Every pointer that goes down on a row tracks its own swipe, so several rows can be swiped at
+ * the same time with different fingers. Each of them is dismissed or slid back on its own.</p>
+ *
+ * <p>When the adapter of the {@link ListView} has stable ids, in-flight swipes and pending
+ * dismisses are tracked by item id rather than by position, so the action is delivered to the
+ * right item even if the data set changes while an animation is running. Without stable ids a
+ * swipe that is still in flight when the data set changes slides back without an action.</p>
+ *
+ * <p>Rows settle into place with a critically damped spring that starts out at the velocity of
+ * the finger, so flings finish sooner than slow drags. The settle animations and the collapse of
+ * dismissed rows are driven by a {@link FrameClock}, which can be replaced with
+ * {@link #setFrameClock(FrameClock)}.</p>
+ *
+ * <p>The records and listeners behind gestures, dismiss animations and pending dismisses are
+ * pooled and reused, so swiping single rows doesn't allocate once the pools have warmed up.
+ * The records let go of their views as soon as they are done with them.</p>
+ *
+ * <p>Several lists can share their configuration and animations through a
+ * {@link SwipeCoordinator}. Only one row across all of those lists can be swiped at a time.</p>
+ *
+ * <p>This class Requires API level 11 or later due to use of {@link View#setTranslationX(float)}.</p>
  */
 public class SwipeActionTouchListener implements View.OnTouchListener {
     // Cached ViewConfiguration and system-wide constant values
@@ -75,6 +96,9 @@ public class SwipeActionTouchListener implements View.OnTouchListener {
     private int mMinFlingVelocity;
     private int mMaxFlingVelocity;
     private long mAnimationTime;
+    private SettleAnimator mSettleAnimator;
+    // Null if this list doesn't share anything
+    private SwipeCoordinator mCoordinator;
 
     // Fixed properties
     private ListView mListView;
@@ -82,21 +106,70 @@ public class SwipeActionTouchListener implements View.OnTouchListener {
     private int mViewWidth = 1; // 1 and not 0 to prevent dividing by zero
     private boolean mFadeOut = false;
     private boolean mFixedBackgrounds = false;
+    private boolean mMultiSwipe = false;
+    private SwipeThresholds mThresholds = new SwipeThresholds(0.5f);
+    private int[] mLeftThresholds;
+    private int[] mRightThresholds;
 
     // Transient properties
     private List<PendingDismissData> mPendingDismisses = new ArrayList<PendingDismissData>();
     private int mDismissAnimationRefCount = 0;
-    private float mDownX;
-    private float mDownY;
-    private boolean mSwiping;
-    private int mSwipingSlop;
-    private VelocityTracker mVelocityTracker;
-    private int mDownPosition;
-    private View mDownView;
-    private SwipeViewGroup mDownViewGroup;
+    private int mRunningCollapses = 0;
+    private List<SwipeGesture> mGestures = new ArrayList<SwipeGesture>();
     private boolean mPaused;
-    private int mDirection;
-    private boolean mFar;
+    private boolean mDispatchingCancel;
+    private View.OnLayoutChangeListener mLayoutChangeListener;
+
+    // How far resolvePosition looks for an offscreen item that moved, at least
+    private static final int RESOLVE_RADIUS = 50;
+
+    // Pools of reusable records, so swiping doesn't allocate in steady state
+    private static final int MAX_POOL_SIZE = 8;
+    private final ObjectPool<SwipeGesture> mGesturePool = new ObjectPool<SwipeGesture>(MAX_POOL_SIZE) {
+        @Override
+        protected SwipeGesture create() {
+            return new SwipeGesture();
+        }
+    };
+    private final ObjectPool<SwipedRow> mSwipedRowPool = new ObjectPool<SwipedRow>(MAX_POOL_SIZE) {
+        @Override
+        protected SwipedRow create() {
+            return new SwipedRow();
+        }
+    };
+    private final ObjectPool<DismissRecord> mDismissPool = new ObjectPool<DismissRecord>(MAX_POOL_SIZE) {
+        @Override
+        protected DismissRecord create() {
+            return new DismissRecord();
+        }
+    };
+    private final ObjectPool<PendingDismissData> mPendingDismissPool = new ObjectPool<PendingDismissData>(MAX_POOL_SIZE) {
+        @Override
+        protected PendingDismissData create() {
+            return new PendingDismissData();
+        }
+    };
+    private final ObjectPool<CollapseAnimation> mCollapsePool = new ObjectPool<CollapseAnimation>(MAX_POOL_SIZE) {
+        @Override
+        protected CollapseAnimation create() {
+            return new CollapseAnimation();
+        }
+    };
+
+    // Stable id bookkeeping
+    private ListAdapter mObservedAdapter;
+    private int mDataGeneration = 0;
+    private final DataSetObserver mDataSetObserver = new DataSetObserver() {
+        @Override
+        public void onChanged() {
+            ++mDataGeneration;
+        }
+
+        @Override
+        public void onInvalidated() {
+            ++mDataGeneration;
+        }
+    };
 
     /**
      * The callback interface used by {@link SwipeActionTouchListener} to inform its client
@@ -123,6 +196,42 @@ public class SwipeActionTouchListener implements View.OnTouchListener {
         boolean onAction(ListView listView, int position, int direction);
     }
 
+    /**
+     * ActionCallbacks that want to receive the actions on several list items in a single call.
+     * Callbacks that don't implement this get {@link ActionCallbacks#onAction(ListView, int, int)}
+     * once for every item instead.
+     */
+    public interface BatchActionCallbacks extends ActionCallbacks {
+        /**
+         * Called when several list items have been swiped at once, e.g. through
+         * {@link SwipeActionTouchListener#performActions(int[], int)}.
+         * The listener will wait for this method to return before starting the dismiss animation
+         * or the reappear animation of the visible items.
+         *
+         * @return for each position whether the list item should be dismissed or shown again.
+         * @param listView The originating {@link ListView}.
+         * @param positions The positions to perform the action on, sorted in descending order
+         *                  for convenience.
+         * @param direction The type of swipe that triggered the action
+         */
+        boolean[] onActions(ListView listView, int[] positions, int direction);
+    }
+
+    /**
+     * ActionCallbacks that want to pick the background of a row before it is shown
+     */
+    public interface BackgroundCallbacks extends ActionCallbacks {
+        /**
+         * Called right before the background of a swiped row is shown, whenever a swipe engages
+         * or moves on to another direction. This is the place to swap in the right background.
+         *
+         * @param group The row that is being swiped.
+         * @param position The position of the row.
+         * @param direction The direction whose background is about to be shown
+         */
+        void prepareBackground(SwipeViewGroup group, int position, int direction);
+    }
+
     /**
      * Constructs a new swipe-to-dismiss touch listener for the given list view.
      *
@@ -131,14 +240,63 @@ public class SwipeActionTouchListener implements View.OnTouchListener {
      * dismiss one or more list items.
      */
     public SwipeActionTouchListener(ListView listView, ActionCallbacks callbacks) {
-        ViewConfiguration vc = ViewConfiguration.get(listView.getContext());
-        mSlop = vc.getScaledTouchSlop();
-        mMinFlingVelocity = vc.getScaledMinimumFlingVelocity() * 16;
-        mMaxFlingVelocity = vc.getScaledMaximumFlingVelocity();
-        mAnimationTime = listView.getContext().getResources().getInteger(
-                android.R.integer.config_shortAnimTime);
+        this(listView, callbacks, null);
+    }
+
+    /**
+     * Constructs a new swipe-to-dismiss touch listener that shares its configuration, animations
+     * and the right to swipe with the other lists of a {@link SwipeCoordinator}.
+     *
+     * @param listView The list view whose items should be dismissable.
+     * @param callbacks The callback to trigger when the user has indicated that she would like to
+     * dismiss one or more list items.
+     * @param coordinator The coordinator to share with other lists, or null to share nothing.
+     */
+    public SwipeActionTouchListener(ListView listView, ActionCallbacks callbacks, SwipeCoordinator coordinator) {
+        mCoordinator = coordinator;
+        if (coordinator != null) {
+            mSlop = coordinator.getSlop();
+            mMinFlingVelocity = coordinator.getMinFlingVelocity();
+            mMaxFlingVelocity = coordinator.getMaxFlingVelocity();
+            mAnimationTime = coordinator.getAnimationTime();
+            mSettleAnimator = coordinator.getSettleAnimator();
+        } else {
+            ViewConfiguration vc = ViewConfiguration.get(listView.getContext());
+            mSlop = vc.getScaledTouchSlop();
+            mMinFlingVelocity = vc.getScaledMinimumFlingVelocity() * 16;
+            mMaxFlingVelocity = vc.getScaledMaximumFlingVelocity();
+            mAnimationTime = listView.getContext().getResources().getInteger(
+                    android.R.integer.config_shortAnimTime);
+            mSettleAnimator = new SettleAnimator(new ChoreographerFrameClock(), mAnimationTime);
+        }
         mListView = listView;
         mCallbacks = callbacks;
+
+        // Keep track of the width of the rows, it changes on rotation or when resizing the window
+        if (listView.getWidth() > 0) mViewWidth = listView.getWidth();
+        updateThresholds();
+        mLayoutChangeListener = new View.OnLayoutChangeListener() {
+            @Override
+            public void onLayoutChange(View v, int left, int top, int right, int bottom,
+                                       int oldLeft, int oldTop, int oldRight, int oldBottom) {
+                int width = right - left;
+                if (width == mViewWidth || width <= 0) return;
+                mViewWidth = width;
+                updateThresholds();
+            }
+        };
+        listView.addOnLayoutChangeListener(mLayoutChangeListener);
+    }
+
+    /**
+     * Stop listening to the ListView and its adapter, and slide back the rows of any gesture in
+     * progress. Call this before replacing the touch listener of a list.
+     */
+    void detach() {
+        mListView.removeOnLayoutChangeListener(mLayoutChangeListener);
+        if (mObservedAdapter != null) mObservedAdapter.unregisterDataSetObserver(mDataSetObserver);
+        mObservedAdapter = null;
+        cancelGestures();
     }
 
     /**
@@ -155,15 +313,19 @@ public class SwipeActionTouchListener implements View.OnTouchListener {
      * ListView} using {@link ListView#setOnScrollListener(AbsListView.OnScrollListener)}.
      * If a scroll listener is already assigned, the caller should still pass scroll changes through
      * to this listener. This will ensure that this {@link SwipeActionTouchListener} is
-     * paused during list view scrolling.</p>
+     * paused during list view scrolling and flinging, and that a fling settles any half swiped
+     * rows.</p>
      *
      * @see SwipeActionTouchListener
+     * @see CompositeScrollListener
      */
     public AbsListView.OnScrollListener makeScrollListener() {
         return new AbsListView.OnScrollListener() {
             @Override
             public void onScrollStateChanged(AbsListView absListView, int scrollState) {
-                setEnabled(scrollState != AbsListView.OnScrollListener.SCROLL_STATE_TOUCH_SCROLL);
+                setEnabled(scrollState == AbsListView.OnScrollListener.SCROLL_STATE_IDLE);
+                // Nothing should be swiping while the list flies past
+                if (scrollState == AbsListView.OnScrollListener.SCROLL_STATE_FLING) cancelGestures();
             }
 
             @Override
@@ -192,272 +354,951 @@ public class SwipeActionTouchListener implements View.OnTouchListener {
         mFixedBackgrounds = fixedBackgrounds;
     }
 
+    /**
+     * Set the clock that drives the settle animations of swiped rows and the collapse of dismissed
+     * rows.
+     * The default clock is synced with the display, replacing it is mostly useful in tests.
+     * The clock is shared with all lists of the same {@link SwipeCoordinator}.
+     *
+     * @param clock the clock to use
+     */
+    public void setFrameClock(FrameClock clock){
+        mSettleAnimator.setFrameClock(clock);
+    }
+
+    /**
+     * Set the distances at which a swipe moves from one stage to the next.
+     * The default has two stages per side, the second one starting at half the width of the row.
+     * A row that is dragged into its second stage is dismissed on release, if there is only one
+     * stage a row has to be dragged over half its width.
+     *
+     * @param thresholds the thresholds to use
+     */
+    public void setSwipeThresholds(SwipeThresholds thresholds){
+        mThresholds = thresholds;
+        updateThresholds();
+    }
+
+    /**
+     * Set whether dragging vertically during a swipe pulls the crossed rows into the same swipe.
+     * The default value for this property is false
+     *
+     * @param multiSwipe true to swipe multiple rows in one gesture, false to swipe a single row
+     */
+    public void setMultiSwipe(boolean multiSwipe){
+        mMultiSwipe = multiSwipe;
+    }
+
+    /**
+     * Returns the number of dismissed rows that are held until all dismiss animations are done
+     */
+    int getPendingDismissCount() {
+        return mPendingDismisses.size();
+    }
+
+    /**
+     * Returns the number of running settle and collapse animations
+     */
+    int getRunningAnimationCount() {
+        return mSettleAnimator.getRunningCount() + mRunningCollapses;
+    }
+
+    /**
+     * Returns the number of idle records in all pools
+     */
+    int getPooledCount() {
+        return mGesturePool.size() + mSwipedRowPool.size() + mDismissPool.size()
+                + mPendingDismissPool.size() + mCollapsePool.size()
+                + mSettleAnimator.getPooledCount();
+    }
+
+    /**
+     * Returns the number of records all pools have created so far. Once the pools have warmed up
+     * this stops growing.
+     */
+    int getCreatedCount() {
+        return mGesturePool.getCreatedCount() + mSwipedRowPool.getCreatedCount()
+                + mDismissPool.getCreatedCount() + mPendingDismissPool.getCreatedCount()
+                + mCollapsePool.getCreatedCount() + mSettleAnimator.getCreatedCount();
+    }
+
+    /**
+     * Returns the row width the thresholds were computed for
+     */
+    int getCachedWidth() {
+        return mViewWidth;
+    }
+
+    /**
+     * Returns the number of stage thresholds that are cached in pixels, for both sides
+     */
+    int getCachedThresholdCount() {
+        return mLeftThresholds.length + mRightThresholds.length;
+    }
+
+    /**
+     * Drop all idle pooled records, they are created again when they are needed
+     */
+    void trimMemory() {
+        mGesturePool.clear();
+        mSwipedRowPool.clear();
+        mDismissPool.clear();
+        mPendingDismissPool.clear();
+        mCollapsePool.clear();
+        mSettleAnimator.trimPool();
+    }
+
+    /**
+     * Perform a swipe action on several list items at once, as if the user had swiped them.
+     * The visible items are swiped out together, after which
+     * {@link BatchActionCallbacks#onActions(ListView, int[], int)} is called once for the whole
+     * batch, or {@link ActionCallbacks#onAction(ListView, int, int)} once per item if the callbacks
+     * don't handle batches. The dismissed items then collapse in a single animation. Items that
+     * are not on screen are passed to the callback without being animated. Items that are being
+     * swiped or dismissed already are left out of the batch.
+     *
+     * @param positions The positions of the list items to perform the action on
+     * @param direction The direction of the swipe, one of the SwipeDirections constants
+     */
+    public void performActions(int[] positions, final int direction) {
+        if (positions.length == 0 || direction == SwipeDirections.DIRECTION_NEUTRAL) return;
+        observeAdapter();
+
+        // Sort by descending position
+        final int[] sortedPositions = positions.clone();
+        Arrays.sort(sortedPositions);
+        for (int i = 0, j = sortedPositions.length - 1; i < j; i++, j--) {
+            int tmp = sortedPositions[i];
+            sortedPositions[i] = sortedPositions[j];
+            sortedPositions[j] = tmp;
+        }
+
+        int[] batchPositions = new int[sortedPositions.length];
+        long[] itemIds = new long[sortedPositions.length];
+        View[] views = new View[sortedPositions.length];
+        int count = 0;
+        final int generation = mDataGeneration;
+        int firstPosition = mListView.getFirstVisiblePosition();
+        int childCount = mListView.getChildCount();
+        for (int i = 0; i < sortedPositions.length; i++) {
+            // A row that is asked for twice still only gets one action
+            if (i > 0 && sortedPositions[i] == sortedPositions[i - 1]) continue;
+            int index = sortedPositions[i] - firstPosition;
+            View view = null;
+            if (index >= 0 && index < childCount) {
+                View child = mListView.getChildAt(index);
+                // Rows that are held by a finger or still busy with another action are left out
+                // of the batch, they get their own action when they are done
+                if (findGesture(child) != null) continue;
+                view = mFixedBackgrounds && child instanceof SwipeViewGroup
+                        ? ((SwipeViewGroup) child).getContentView() : child;
+                if (!mSettleAnimator.cancel(view)) continue;
+
+                if (child instanceof SwipeViewGroup) {
+                    showBackground((SwipeViewGroup) child, sortedPositions[i], direction);
+                }
+            }
+            batchPositions[count] = sortedPositions[i];
+            itemIds[count] = getStableId(sortedPositions[i]);
+            views[count] = view;
+            count++;
+        }
+        if (count == 0) return;
+        if (count < sortedPositions.length) {
+            batchPositions = Arrays.copyOf(batchPositions, count);
+            itemIds = Arrays.copyOf(itemIds, count);
+            views = Arrays.copyOf(views, count);
+        }
+
+        swipeOut(batchPositions, itemIds, generation, views, direction, 0);
+    }
+
     @Override
     public boolean onTouch(View view, MotionEvent motionEvent) {
-        if (mViewWidth < 2) {
-            mViewWidth = mListView.getWidth();
+        // Don't cancel our own gestures with the cancel event we send after a dismiss
+        if (mDispatchingCancel) {
+            return false;
         }
 
         switch (motionEvent.getActionMasked()) {
-            case MotionEvent.ACTION_DOWN: {
+            case MotionEvent.ACTION_DOWN:
+            case MotionEvent.ACTION_POINTER_DOWN: {
+                if (motionEvent.getActionMasked() == MotionEvent.ACTION_DOWN) {
+                    // This is the first pointer, anything left over is stale
+                    cancelGestures();
+                }
                 if (mPaused) {
-                    return false;
+                    return isSwiping();
                 }
 
                 // TODO: ensure this is a finger, and set a flag
 
-                // Find the child view that was touched (perform a hit test)
-                Rect rect = new Rect();
-                int childCount = mListView.getChildCount();
-                int[] listViewCoords = new int[2];
-                mListView.getLocationOnScreen(listViewCoords);
-                int x = (int) motionEvent.getRawX() - listViewCoords[0];
-                int y = (int) motionEvent.getRawY() - listViewCoords[1];
-                View child;
-                for (int i = 0; i < childCount; i++) {
-                    child = mListView.getChildAt(i);
-                    child.getHitRect(rect);
-                    if (rect.contains(x, y)) {
-                        try {
-                            mDownViewGroup = (SwipeViewGroup) child;
-                            mDownView = mFixedBackgrounds ? mDownViewGroup.getContentView() : child;
-                            if(!mFixedBackgrounds) mDownViewGroup.translateBackgrounds();
-                        }
-                        catch(Exception e) {
-                            mDownView = child;
-                        }
-                        break;
-                    }
-                }
-
-                if (mDownView != null) {
-                    mDownX = motionEvent.getRawX();
-                    mDownY = motionEvent.getRawY();
-                    mDownPosition = mListView.getPositionForView(mDownView);
-                    if (mCallbacks.hasActions(mDownPosition)) {
-                        mVelocityTracker = VelocityTracker.obtain();
-                        mVelocityTracker.addMovement(motionEvent);
-                    } else {
-                        mDownView = null;
-                    }
-                }
-                return false;
+                startGesture(motionEvent, motionEvent.getActionIndex());
+                return isSwiping();
             }
 
             case MotionEvent.ACTION_CANCEL: {
-                if (mVelocityTracker == null) {
-                    break;
-                }
-
-                if (mDownView != null && mSwiping) {
-                    // cancel
-                    mDownView.animate()
-                            .translationX(0)
-                            .alpha(1)
-                            .setDuration(mAnimationTime)
-                            .setListener(null);
-                }
-                mVelocityTracker.recycle();
-                mVelocityTracker = null;
-                mDownX = 0;
-                mDownY = 0;
-                mDownView = null;
-                mDownPosition = ListView.INVALID_POSITION;
-                mSwiping = false;
-                mDirection = SwipeDirections.DIRECTION_NEUTRAL;
-                mFar = false;
+                cancelGestures();
                 break;
             }
 
-            case MotionEvent.ACTION_UP: {
-                if (mVelocityTracker == null) {
-                    break;
-                }
-
-                float deltaX = motionEvent.getRawX() - mDownX;
-                mVelocityTracker.addMovement(motionEvent);
-                mVelocityTracker.computeCurrentVelocity(1000);
-                float velocityX = mVelocityTracker.getXVelocity();
-                float absVelocityX = Math.abs(velocityX);
-                float absVelocityY = Math.abs(mVelocityTracker.getYVelocity());
-                boolean dismiss = false;
-                boolean dismissRight = false;
-                if (Math.abs(deltaX) > mViewWidth / 2 && mSwiping) {
-                    dismiss = true;
-                    dismissRight = deltaX > 0;
-                } else if (mMinFlingVelocity <= absVelocityX && absVelocityX <= mMaxFlingVelocity
-                        && absVelocityY < absVelocityX && mSwiping) {
-                    // dismiss only if flinging in the same direction as dragging
-                    dismiss = (velocityX < 0) == (deltaX < 0);
-                    dismissRight = mVelocityTracker.getXVelocity() > 0;
+            case MotionEvent.ACTION_UP:
+            case MotionEvent.ACTION_POINTER_UP: {
+                int pointerIndex = motionEvent.getActionIndex();
+                SwipeGesture gesture = findGesture(motionEvent.getPointerId(pointerIndex));
+                if (gesture != null) {
+                    mGestures.remove(gesture);
+                    finishGesture(gesture, motionEvent, pointerIndex);
+                    releaseGesture(gesture);
                 }
-                if (dismiss && mDownPosition != ListView.INVALID_POSITION) {
-                    // dismiss
-                    final View downView = mDownView; // mDownView gets null'd before animation ends
-                    final int downPosition = mDownPosition;
-                    final int direction = mDirection;
-                    ++mDismissAnimationRefCount;
-                    mDownView.animate()
-                            .translationX(dismissRight ? mViewWidth : -mViewWidth)
-                            .alpha(mFadeOut ? 0 : 1)
-                            .setDuration(mAnimationTime)
-                            .setListener(new AnimatorListenerAdapter() {
-                                @Override
-                                public void onAnimationEnd(Animator animation) {
-                                    boolean performDismiss = mCallbacks.onAction(
-                                            mListView,
-                                            downPosition,
-                                            direction
-                                    );
-                                    if(performDismiss) performDismiss(downView,downPosition);
-                                    else slideBack(downView);
-                                }
-                            });
-                } else {
-                    // cancel
-                    mDownView.animate()
-                            .translationX(0)
-                            .alpha(1)
-                            .setDuration(mAnimationTime)
-                            .setListener(null);
+                if (motionEvent.getActionMasked() == MotionEvent.ACTION_UP) {
+                    // The last pointer went up, nothing can still be in progress
+                    cancelGestures();
                 }
-                mVelocityTracker.recycle();
-                mVelocityTracker = null;
-                mDownX = 0;
-                mDownY = 0;
-                mDownView = null;
-                mDownPosition = ListView.INVALID_POSITION;
-                mSwiping = false;
-                mDirection = SwipeDirections.DIRECTION_NEUTRAL;
-                mFar = false;
-                break;
+                return isSwiping();
             }
 
             case MotionEvent.ACTION_MOVE: {
-                if (mVelocityTracker == null || mPaused) {
+                if (mPaused) {
                     break;
                 }
 
-                mVelocityTracker.addMovement(motionEvent);
-                float deltaX = motionEvent.getRawX() - mDownX;
-                float deltaY = motionEvent.getRawY() - mDownY;
-                if (Math.abs(deltaX) > mSlop && Math.abs(deltaY) < Math.abs(deltaX) / 2) {
-                    mSwiping = true;
-                    mSwipingSlop = (deltaX > 0 ? mSlop : -mSlop);
-
-                    if(!mFar && Math.abs(deltaX) > mViewWidth/2) mFar = true;
-                    if(!mFar) mDirection = (deltaX > 0 ? SwipeDirections.DIRECTION_NORMAL_RIGHT : SwipeDirections.DIRECTION_NORMAL_LEFT);
-                    else mDirection = (deltaX > 0 ? SwipeDirections.DIRECTION_FAR_RIGHT : SwipeDirections.DIRECTION_FAR_LEFT);
-                    mDownViewGroup.showBackground(mDirection);
-
-                    mListView.requestDisallowInterceptTouchEvent(true);
-
-                    // Cancel ListView's touch (un-highlighting the item)
-                    MotionEvent cancelEvent = MotionEvent.obtain(motionEvent);
-                    cancelEvent.setAction(MotionEvent.ACTION_CANCEL |
-                            (motionEvent.getActionIndex()
-                                    << MotionEvent.ACTION_POINTER_INDEX_SHIFT));
-                    mListView.onTouchEvent(cancelEvent);
-                    cancelEvent.recycle();
+                boolean swiping = false;
+                for (int i = 0; i < mGestures.size(); i++) {
+                    swiping |= moveGesture(mGestures.get(i), motionEvent);
                 }
+                return swiping;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Recompute the pixel thresholds of the stages, after the thresholds or the row width changed
+     */
+    private void updateThresholds() {
+        mLeftThresholds = mThresholds.toPixels(false, mViewWidth, mLeftThresholds);
+        mRightThresholds = mThresholds.toPixels(true, mViewWidth, mRightThresholds);
+    }
+
+    /**
+     * Start tracking a swipe for the pointer at the given index, if it went down on a row that
+     * has actions and that isn't being swiped by another pointer already.
+     */
+    private void startGesture(MotionEvent motionEvent, int pointerIndex) {
+        observeAdapter();
+
+        // Find the child view that was touched (perform a hit test)
+        int x = (int) motionEvent.getX(pointerIndex);
+        int y = (int) motionEvent.getY(pointerIndex);
+        int index = findChildIndex(y);
+        if (index < 0) return;
 
-                if (mSwiping) {
-                    mDownView.setTranslationX(deltaX - mSwipingSlop);
-                    if(mFadeOut) mDownView.setAlpha(Math.max(0f, Math.min(1f,
-                                1f - 2f * Math.abs(deltaX) / mViewWidth)));
-                    return true;
+        View child = mListView.getChildAt(index);
+        if (x < child.getLeft() || x >= child.getRight() || findGesture(child) != null) return;
+
+        int position = mListView.getPositionForView(child);
+        if (!mCallbacks.hasActions(position)) return;
+
+        SwipeGesture gesture = mGesturePool.obtain();
+        if (child instanceof SwipeViewGroup) {
+            gesture.downViewGroup = (SwipeViewGroup) child;
+            gesture.downView = mFixedBackgrounds ? gesture.downViewGroup.getContentView() : child;
+        } else {
+            gesture.downView = child;
+        }
+        // Catch rows that are sliding back, but leave the ones that are being dismissed alone
+        if (!mSettleAnimator.cancel(gesture.downView)) {
+            releaseGesture(gesture);
+            return;
+        }
+        gesture.pointerId = motionEvent.getPointerId(pointerIndex);
+        gesture.downX = motionEvent.getX(pointerIndex);
+        gesture.downY = motionEvent.getY(pointerIndex);
+        gesture.downPosition = position;
+        gesture.downItemId = getStableId(position);
+        gesture.downGeneration = mDataGeneration;
+        gesture.firstSwipedPosition = position;
+        gesture.lastSwipedPosition = position;
+        gesture.hitTop = child.getTop();
+        gesture.hitBottom = child.getBottom();
+        gesture.velocityTracker = VelocityTracker.obtain();
+        gesture.velocityTracker.addMovement(motionEvent);
+        mGestures.add(gesture);
+    }
+
+    /**
+     * Update a gesture with the latest position of its pointer
+     *
+     * @return true if the gesture is swiping
+     */
+    private boolean moveGesture(SwipeGesture gesture, MotionEvent motionEvent) {
+        int pointerIndex = motionEvent.findPointerIndex(gesture.pointerId);
+        if (pointerIndex < 0) {
+            return gesture.swiping;
+        }
+
+        gesture.velocityTracker.addMovement(motionEvent);
+        float deltaX = motionEvent.getX(pointerIndex) - gesture.downX;
+        float deltaY = motionEvent.getY(pointerIndex) - gesture.downY;
+        if (Math.abs(deltaX) > mSlop && Math.abs(deltaY) < Math.abs(deltaX) / 2
+                && (mCoordinator == null || mCoordinator.engage(gesture))) {
+            gesture.swiping = true;
+            gesture.swipingSlop = (deltaX > 0 ? mSlop : -mSlop);
+
+            // Once a stage has been reached the swipe stays in it, even when moving back
+            int[] thresholds = deltaX > 0 ? mRightThresholds : mLeftThresholds;
+            int stage = SwipeThresholds.getStage(Math.abs(deltaX), thresholds);
+            if(stage > gesture.stage) gesture.stage = stage;
+            stage = Math.min(gesture.stage, thresholds.length + 1);
+            int direction = (deltaX > 0 ? stage : -stage);
+            if (direction != gesture.direction) {
+                gesture.direction = direction;
+                if (gesture.downViewGroup != null) {
+                    showBackground(gesture.downViewGroup, gesture.downPosition, direction);
+                }
+                for (int i = 0; i < gesture.extraRows.size(); i++) {
+                    SwipedRow row = gesture.extraRows.get(i);
+                    if (row.group != null) showBackground(row.group, row.position, direction);
                 }
-                break;
             }
+
+            mListView.requestDisallowInterceptTouchEvent(true);
+
+            // Cancel ListView's touch (un-highlighting the item)
+            MotionEvent cancelEvent = MotionEvent.obtain(motionEvent);
+            cancelEvent.setAction(MotionEvent.ACTION_CANCEL |
+                    (pointerIndex << MotionEvent.ACTION_POINTER_INDEX_SHIFT));
+            mListView.onTouchEvent(cancelEvent);
+            cancelEvent.recycle();
+        }
+
+        if (gesture.swiping) {
+            if (mMultiSwipe) {
+                int y = (int) motionEvent.getY(pointerIndex);
+                if (y < gesture.hitTop || y >= gesture.hitBottom) extendSwipe(gesture, y);
+            }
+
+            float translationX = deltaX - gesture.swipingSlop;
+            float alpha = Math.max(0f, Math.min(1f, 1f - 2f * Math.abs(deltaX) / mViewWidth));
+            gesture.downView.setTranslationX(translationX);
+            if(mFadeOut) gesture.downView.setAlpha(alpha);
+            for (int i = 0; i < gesture.extraRows.size(); i++) {
+                View rowView = gesture.extraRows.get(i).view;
+                rowView.setTranslationX(translationX);
+                if(mFadeOut) rowView.setAlpha(alpha);
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * The pointer of a gesture went up: either dismiss its rows or slide them back
+     */
+    private void finishGesture(SwipeGesture gesture, MotionEvent motionEvent, int pointerIndex) {
+        float deltaX = motionEvent.getX(pointerIndex) - gesture.downX;
+        VelocityTracker velocityTracker = gesture.velocityTracker;
+        velocityTracker.addMovement(motionEvent);
+        velocityTracker.computeCurrentVelocity(1000);
+        float velocityX = velocityTracker.getXVelocity(gesture.pointerId);
+        float absVelocityX = Math.abs(velocityX);
+        float absVelocityY = Math.abs(velocityTracker.getYVelocity(gesture.pointerId));
+        velocityTracker.recycle();
+        gesture.velocityTracker = null;
+
+        // Dragging a row far enough to show its second stage dismisses it
+        int[] thresholds = deltaX > 0 ? mRightThresholds : mLeftThresholds;
+        int dismissDistance = thresholds.length > 0 ? thresholds[0] : mViewWidth / 2;
+
+        boolean dismiss = false;
+        boolean dismissRight = false;
+        if (Math.abs(deltaX) > dismissDistance && gesture.swiping) {
+            dismiss = true;
+            dismissRight = deltaX > 0;
+        } else if (mMinFlingVelocity <= absVelocityX && absVelocityX <= mMaxFlingVelocity
+                && absVelocityY < absVelocityX && gesture.swiping) {
+            // dismiss only if flinging in the same direction as dragging
+            dismiss = (velocityX < 0) == (deltaX < 0);
+            dismissRight = velocityX > 0;
+        }
+        // The data may have changed since ACTION_DOWN
+        gesture.downPosition = resolvePosition(gesture.downView, gesture.downPosition, gesture.downItemId, gesture.downGeneration);
+        if (dismiss && !gesture.extraRows.isEmpty()) {
+            // dismiss all rows that were pulled into this swipe together
+            swipeOutRows(gesture, velocityX);
+        } else if (dismiss && gesture.downPosition != ListView.INVALID_POSITION) {
+            // dismiss
+            DismissRecord record = mDismissPool.obtain();
+            record.view = gesture.downView;
+            record.position = gesture.downPosition;
+            record.itemId = gesture.downItemId;
+            record.generation = mDataGeneration;
+            record.direction = gesture.direction;
+            if (mSettleAnimator.settle(
+                    gesture.downView,
+                    dismissRight ? mViewWidth : -mViewWidth,
+                    velocityX,
+                    mFadeOut ? 0 : 1,
+                    record
+            )) {
+                ++mDismissAnimationRefCount;
+            } else {
+                // The row is busy with another action already
+                record.view = null;
+                mDismissPool.release(record);
+            }
+        } else {
+            // cancel
+            slideBack(gesture.downView, velocityX);
+            for (int i = 0; i < gesture.extraRows.size(); i++) {
+                slideBack(gesture.extraRows.get(i).view, velocityX);
+            }
+        }
+    }
+
+    /**
+     * Slide back the rows of all gestures in progress and stop tracking them
+     */
+    private void cancelGestures() {
+        for (int i = 0; i < mGestures.size(); i++) {
+            SwipeGesture gesture = mGestures.get(i);
+            if (gesture.swiping) slideBack(gesture.downView);
+            for (int j = 0; j < gesture.extraRows.size(); j++) {
+                slideBack(gesture.extraRows.get(j).view);
+            }
+            releaseGesture(gesture);
+        }
+        mGestures.clear();
+    }
+
+    /**
+     * Hand a gesture that is no longer tracked back to the pool, together with its rows
+     */
+    private void releaseGesture(SwipeGesture gesture) {
+        if (mCoordinator != null) mCoordinator.release(gesture);
+        if (gesture.velocityTracker != null) gesture.velocityTracker.recycle();
+        for (int i = 0; i < gesture.extraRows.size(); i++) {
+            SwipedRow row = gesture.extraRows.get(i);
+            row.view = null;
+            row.group = null;
+            mSwipedRowPool.release(row);
+        }
+        gesture.reset();
+        mGesturePool.release(gesture);
+    }
+
+    private boolean isSwiping() {
+        for (int i = 0; i < mGestures.size(); i++) {
+            if (mGestures.get(i).swiping) return true;
         }
         return false;
     }
 
-    class PendingDismissData implements Comparable<PendingDismissData> {
+    private SwipeGesture findGesture(int pointerId) {
+        for (int i = 0; i < mGestures.size(); i++) {
+            if (mGestures.get(i).pointerId == pointerId) return mGestures.get(i);
+        }
+        return null;
+    }
+
+    /**
+     * Find the gesture that is swiping the given child of the ListView, if any
+     */
+    private SwipeGesture findGesture(View child) {
+        for (int i = 0; i < mGestures.size(); i++) {
+            SwipeGesture gesture = mGestures.get(i);
+            if (gesture.downView == child || gesture.downViewGroup == child) return gesture;
+            for (int j = 0; j < gesture.extraRows.size(); j++) {
+                SwipedRow row = gesture.extraRows.get(j);
+                if (row.view == child || row.group == child) return gesture;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The state of a swipe driven by a single pointer
+     */
+    class SwipeGesture {
+        public int pointerId;
+        public float downX;
+        public float downY;
+        public boolean swiping;
+        public int swipingSlop;
+        public VelocityTracker velocityTracker;
+        public int downPosition;
+        public long downItemId;
+        public int downGeneration;
+        public View downView;
+        public SwipeViewGroup downViewGroup;
+        public int direction = SwipeDirections.DIRECTION_NEUTRAL;
+        public int stage;
+
+        // Rows that were pulled into this swipe by dragging across them
+        public final List<SwipedRow> extraRows = new ArrayList<SwipedRow>();
+        public int firstSwipedPosition;
+        public int lastSwipedPosition;
+        public int hitTop;
+        public int hitBottom;
+
+        void reset() {
+            swiping = false;
+            velocityTracker = null;
+            downView = null;
+            downViewGroup = null;
+            direction = SwipeDirections.DIRECTION_NEUTRAL;
+            stage = 0;
+            extraRows.clear();
+        }
+    }
+
+    /**
+     * A row that was pulled into a swipe next to the row the gesture started on
+     */
+    class SwipedRow {
+        public View view;
+        public SwipeViewGroup group;
         public int position;
+        public long itemId;
+        public int generation;
+    }
+
+    class PendingDismissData {
+        public View view;
+        public int originalHeight;
+    }
+
+    /**
+     * A row that is swiped out by a single gesture. Once it is offscreen the callback decides
+     * whether it gets dismissed or slides back.
+     */
+    class DismissRecord implements SettleAnimator.SettleListener {
         public View view;
+        public int position;
+        public long itemId;
+        public int generation;
+        public int direction;
+
+        @Override
+        public void onSettled(View settledView) {
+            // Copy everything out first, the callbacks may start another dismiss
+            View downView = view;
+            int position = resolvePosition(view, this.position, itemId, generation);
+            int direction = this.direction;
+            view = null;
+            mDismissPool.release(this);
+
+            if (position == ListView.INVALID_POSITION) {
+                // The item was removed while we were animating
+                slideBack(downView);
+                finishDismissAnimation();
+                return;
+            }
+            boolean performDismiss = mCallbacks.onAction(
+                    mListView,
+                    position,
+                    direction
+            );
+            if(performDismiss) performDismiss(downView);
+            else {
+                slideBack(downView);
+                finishDismissAnimation();
+            }
+        }
+    }
 
-        public PendingDismissData(int position, View view) {
-            this.position = position;
-            this.view = view;
+    /**
+     * Animates a set of dismissed rows to zero-height together. It runs on the same clock as the
+     * settle animations and is reused every time the record comes out of the pool.
+     */
+    class CollapseAnimation implements FrameClock.FrameCallback {
+        public final List<PendingDismissData> dismisses = new ArrayList<PendingDismissData>();
+        private FrameClock mClock;
+        private long mStartTime;
+        private long mDuration;
+
+        void start(long duration) {
+            mClock = mSettleAnimator.getFrameClock();
+            mStartTime = mClock.nanoTime();
+            mDuration = Math.max(1, duration) * 1000000L;
+            mClock.postFrameCallback(this);
         }
 
         @Override
-        public int compareTo(PendingDismissData other) {
-            // Sort by descending position
-            return other.position - position;
+        public void doFrame(long frameTimeNanos) {
+            float t = Math.min(1f, Math.max(0, frameTimeNanos - mStartTime) / (float) mDuration);
+            // Accelerate and decelerate, like the default interpolator of a ValueAnimator
+            float fraction = 0.5f - (float) Math.cos((t + 1) * Math.PI) / 2f;
+            ViewGroup.LayoutParams lp;
+            for (int i = 0; i < dismisses.size(); i++) {
+                PendingDismissData dismiss = dismisses.get(i);
+                lp = dismiss.view.getLayoutParams();
+                lp.height = Math.max(1, (int) (dismiss.originalHeight * fraction));
+                dismiss.view.setLayoutParams(lp);
+            }
+            if (t < 1f) {
+                mClock.postFrameCallback(this);
+                return;
+            }
+
+            // The pending dismisses are restored and released in finishDismissAnimation
+            dismisses.clear();
+            mClock = null;
+            --mRunningCollapses;
+            finishDismissAnimation();
+            mCollapsePool.release(this);
+        }
+    }
+
+    /**
+     * Pull the rows between the ones already being swiped and the row at the given y coordinate
+     * into the current swipe. Only called when the finger leaves the last row it was hit tested on.
+     *
+     * @param gesture the gesture to extend
+     * @param y the y coordinate of the finger, relative to the ListView
+     */
+    private void extendSwipe(SwipeGesture gesture, int y) {
+        int index = findChildIndex(y);
+        if (index < 0) return;
+
+        View child = mListView.getChildAt(index);
+        gesture.hitTop = child.getTop();
+        gesture.hitBottom = child.getBottom();
+
+        int firstPosition = mListView.getFirstVisiblePosition();
+        int position = firstPosition + index;
+        while (gesture.lastSwipedPosition < position) {
+            addSwipedRow(gesture, ++gesture.lastSwipedPosition - firstPosition);
+        }
+        while (gesture.firstSwipedPosition > position) {
+            addSwipedRow(gesture, --gesture.firstSwipedPosition - firstPosition);
+        }
+    }
+
+    /**
+     * Binary search for the child containing the given y coordinate. The children of a ListView are
+     * laid out from top to bottom, so there is no need to test every one of them.
+     *
+     * @param y the y coordinate, relative to the ListView
+     * @return the index of the child, or -1 if there is none at that coordinate
+     */
+    private int findChildIndex(int y) {
+        int low = 0;
+        int high = mListView.getChildCount() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            View child = mListView.getChildAt(mid);
+            if (y < child.getTop()) high = mid - 1;
+            else if (y >= child.getBottom()) low = mid + 1;
+            else return mid;
         }
+        return -1;
     }
 
-    private void slideBack(final View slideInView){
-        float translation = slideInView.getTranslationX();
-        slideInView.setTranslationX(translation);
-        slideInView.animate()
-                .translationX(0)
-                .alpha(1)
-                .setDuration(mAnimationTime)
-                .setListener(null);
+    /**
+     * Let the callbacks pick the background of a row before it is shown
+     */
+    private void showBackground(SwipeViewGroup group, int position, int direction) {
+        if (mCallbacks instanceof BackgroundCallbacks) {
+            ((BackgroundCallbacks) mCallbacks).prepareBackground(group, position, direction);
+        }
+        group.showBackground(direction);
     }
 
-    private void performDismiss(final View dismissView, final int dismissPosition) {
-        // Animate the dismissed list item to zero-height and fire the dismiss callback when
-        // all dismissed list item animations have completed. This triggers layout on each animation
-        // frame; in the future we may want to do something smarter and more performant.
+    private void addSwipedRow(SwipeGesture gesture, int index) {
+        View child = mListView.getChildAt(index);
+        int position = mListView.getFirstVisiblePosition() + index;
+        if (child == null || findGesture(child) != null || !mCallbacks.hasActions(position)) return;
 
-        final ViewGroup.LayoutParams lp = dismissView.getLayoutParams();
-        final int originalHeight = dismissView.getHeight();
+        SwipedRow row = mSwipedRowPool.obtain();
+        if (child instanceof SwipeViewGroup) {
+            row.group = (SwipeViewGroup) child;
+            row.view = mFixedBackgrounds ? row.group.getContentView() : child;
+        } else {
+            row.view = child;
+        }
+        if (!mSettleAnimator.cancel(row.view)) {
+            row.view = null;
+            row.group = null;
+            mSwipedRowPool.release(row);
+            return;
+        }
+        if (row.group != null) showBackground(row.group, position, gesture.direction);
+        row.position = position;
+        row.itemId = getStableId(position);
+        row.generation = mDataGeneration;
+        gesture.extraRows.add(row);
+    }
 
-        ValueAnimator animator = ValueAnimator.ofInt(originalHeight, 1).setDuration(mAnimationTime);
+    /**
+     * Swipe out the row the gesture started on together with all the rows that were pulled into
+     * the swipe, and hand them to the callbacks as one batch.
+     */
+    private void swipeOutRows(SwipeGesture gesture, float velocityX) {
+        int count = gesture.extraRows.size() + 1;
+        int[] positions = new int[count];
+        long[] itemIds = new long[count];
+        View[] views = new View[count];
 
-        animator.addListener(new AnimatorListenerAdapter() {
-            @Override
-            public void onAnimationEnd(Animator animation) {
-                --mDismissAnimationRefCount;
-                if (mDismissAnimationRefCount == 0) {
-                    // No active animations, process all pending dismisses.
-                    // Sort by descending position
-                    Collections.sort(mPendingDismisses);
-
-                    int[] dismissPositions = new int[mPendingDismisses.size()];
-                    for (int i = mPendingDismisses.size() - 1; i >= 0; i--) {
-                        dismissPositions[i] = mPendingDismisses.get(i).position;
-                    }
-                    //mCallbacks.onActionLeft(mListView, dismissPositions);
-
-                    // Reset mDownPosition to avoid MotionEvent.ACTION_UP trying to start a dismiss
-                    // animation with a stale position
-                    mDownPosition = ListView.INVALID_POSITION;
-
-                    ViewGroup.LayoutParams lp;
-                    for (PendingDismissData pendingDismiss : mPendingDismisses) {
-                        // Reset view presentation
-                        pendingDismiss.view.setAlpha(1f);
-                        pendingDismiss.view.setTranslationX(0);
-                        lp = pendingDismiss.view.getLayoutParams();
-                        lp.height = originalHeight;
-                        pendingDismiss.view.setLayoutParams(lp);
-                    }
-
-                    // Send a cancel event
-                    long time = SystemClock.uptimeMillis();
-                    MotionEvent cancelEvent = MotionEvent.obtain(time, time,
-                            MotionEvent.ACTION_CANCEL, 0, 0, 0);
-                    mListView.dispatchTouchEvent(cancelEvent);
-
-                    mPendingDismisses.clear();
-                }
+        positions[0] = gesture.downPosition;
+        itemIds[0] = gesture.downItemId;
+        views[0] = gesture.downView;
+        for (int i = 1; i < count; i++) {
+            SwipedRow row = gesture.extraRows.get(i - 1);
+            positions[i] = resolvePosition(row.view, row.position, row.itemId, row.generation);
+            itemIds[i] = row.itemId;
+            views[i] = row.view;
+        }
+
+        // Sort by descending position
+        for (int i = 1; i < count; i++) {
+            int position = positions[i];
+            long itemId = itemIds[i];
+            View view = views[i];
+            int j = i - 1;
+            for (; j >= 0 && positions[j] < position; j--) {
+                positions[j + 1] = positions[j];
+                itemIds[j + 1] = itemIds[j];
+                views[j + 1] = views[j];
+            }
+            positions[j + 1] = position;
+            itemIds[j + 1] = itemId;
+            views[j + 1] = view;
+        }
+
+        swipeOut(positions, itemIds, mDataGeneration, views, gesture.direction, velocityX);
+    }
+
+    /**
+     * Start listening for data set changes on the adapter that is currently attached to the
+     * ListView. Every change bumps a generation counter, which lets us skip remapping positions
+     * when nothing has changed.
+     */
+    private void observeAdapter(){
+        ListAdapter adapter = mListView.getAdapter();
+        if (adapter == mObservedAdapter) return;
+
+        if (mObservedAdapter != null) mObservedAdapter.unregisterDataSetObserver(mDataSetObserver);
+        mObservedAdapter = adapter;
+        if (adapter != null) adapter.registerDataSetObserver(mDataSetObserver);
+        ++mDataGeneration;
+    }
+
+    /**
+     * Returns the id of the item at the given position, or INVALID_ROW_ID if the adapter doesn't
+     * have stable ids.
+     *
+     * @param position the position of the item in the ListView
+     * @return the stable id of the item
+     */
+    private long getStableId(int position){
+        ListAdapter adapter = mListView.getAdapter();
+        if (position == ListView.INVALID_POSITION || adapter == null || !adapter.hasStableIds()) {
+            return ListView.INVALID_ROW_ID;
+        }
+        return adapter.getItemId(position);
+    }
+
+    /**
+     * Maps a position that was recorded at a certain data generation onto the current data set.
+     * If nothing has changed the position is returned as is. Without a stable id to go by there is
+     * no way to tell where the item went: the ListView may have rebound the row's view to another
+     * item, so the item is treated as gone rather than acting on the wrong one.
+     * A row that is still on screen is checked at the position of its view first, which finds it
+     * no matter how far it moved. Otherwise items usually only shift by a couple of rows, so we
+     * search outwards from the old position. The search gives up after a screen of rows, or
+     * {@link #RESOLVE_RADIUS} rows if that is more, so an item that was removed doesn't cost a
+     * lookup of every row in a large adapter.
+     *
+     * @param view the view of the row, or null if it is offscreen
+     * @param position the position of the item when it was recorded
+     * @param itemId the stable id of the item, or INVALID_ROW_ID
+     * @param generation the data generation at which the position was recorded
+     * @return the current position of the item, or INVALID_POSITION if it no longer exists or
+     *         can't be found
+     */
+    private int resolvePosition(View view, int position, long itemId, int generation){
+        if (position == ListView.INVALID_POSITION || generation == mDataGeneration) return position;
+        if (itemId == ListView.INVALID_ROW_ID) return ListView.INVALID_POSITION;
+
+        ListAdapter adapter = mListView.getAdapter();
+        if (adapter == null) return ListView.INVALID_POSITION;
+
+        int count = adapter.getCount();
+        if (view != null) {
+            int viewPosition = mListView.getPositionForView(view);
+            if (viewPosition != ListView.INVALID_POSITION && viewPosition < count
+                    && adapter.getItemId(viewPosition) == itemId) {
+                return viewPosition;
+            }
+        }
+        int radius = Math.max(RESOLVE_RADIUS, mListView.getChildCount());
+        for (int offset = 0; offset <= radius && (position - offset >= 0 || position + offset < count); offset++) {
+            int below = position + offset;
+            if (below >= 0 && below < count && adapter.getItemId(below) == itemId) return below;
+            int above = position - offset;
+            if (above >= 0 && above < count && adapter.getItemId(above) == itemId) return above;
+        }
+        return ListView.INVALID_POSITION;
+    }
+
+    /**
+     * Swipe a batch of items out together, starting from wherever they are now, and dispatch the
+     * actions once they are all offscreen. If none of the items are visible the actions are
+     * dispatched straight away.
+     */
+    private void swipeOut(final int[] positions, final long[] itemIds, final int generation,
+                          final View[] views, final int direction, float velocityX) {
+        int visibleViews = 0;
+        for (int i = 0; i < views.length; i++) {
+            if (views[i] == null) continue;
+            if (mSettleAnimator.cancel(views[i])) {
+                visibleViews++;
+            } else {
+                // Another action is waiting for this row, it is left out of the batch
+                views[i] = null;
+                positions[i] = ListView.INVALID_POSITION;
             }
-        });
+        }
+
+        if (visibleViews == 0) {
+            dispatchActions(positions, itemIds, generation, views, direction);
+            return;
+        }
+
+        ++mDismissAnimationRefCount;
+        final int settlingViews = visibleViews;
+        SettleAnimator.SettleListener listener = new SettleAnimator.SettleListener() {
+            private int mRemaining = settlingViews;
 
-        animator.addUpdateListener(new ValueAnimator.AnimatorUpdateListener() {
             @Override
-            public void onAnimationUpdate(ValueAnimator valueAnimator) {
-                lp.height = (Integer) valueAnimator.getAnimatedValue();
-                dismissView.setLayoutParams(lp);
+            public void onSettled(View view) {
+                if (--mRemaining > 0) return;
+                dispatchActions(positions, itemIds, generation, views, direction);
+                finishDismissAnimation();
+            }
+        };
+        float targetX = direction > 0 ? mViewWidth : -mViewWidth;
+        for (View view : views) {
+            if (view != null) mSettleAnimator.settle(view, targetX, velocityX, mFadeOut ? 0 : 1, listener);
+        }
+    }
+
+    /**
+     * Hand a batch of swiped items to the callbacks and animate the visible ones accordingly.
+     * Items that disappeared from the data set in the meantime are slid back and left out.
+     */
+    private void dispatchActions(int[] positions, long[] itemIds, int generation, View[] views,
+                                 int direction) {
+        int count = 0;
+        for (int i = 0; i < positions.length; i++) {
+            int position = resolvePosition(views[i], positions[i], itemIds[i], generation);
+            if (position == ListView.INVALID_POSITION) {
+                if (views[i] != null) slideBack(views[i]);
+                continue;
+            }
+            positions[count] = position;
+            itemIds[count] = itemIds[i];
+            views[count] = views[i];
+            count++;
+        }
+        if (count == 0) return;
+
+        int[] actionPositions = count == positions.length ? positions : Arrays.copyOf(positions, count);
+        boolean[] dismiss;
+        if (mCallbacks instanceof BatchActionCallbacks) {
+            dismiss = ((BatchActionCallbacks) mCallbacks).onActions(mListView, actionPositions, direction);
+        } else {
+            dismiss = new boolean[count];
+            for (int i = 0; i < count; i++) {
+                dismiss[i] = mCallbacks.onAction(mListView, actionPositions[i], direction);
             }
-        });
+        }
+
+        CollapseAnimation collapse = mCollapsePool.obtain();
+        for (int i = 0; i < count; i++) {
+            if (views[i] == null) continue;
+            if (dismiss != null && dismiss[i]) {
+                collapse.dismisses.add(obtainPendingDismiss(views[i]));
+            } else {
+                slideBack(views[i]);
+            }
+        }
+        if (collapse.dismisses.isEmpty()) {
+            mCollapsePool.release(collapse);
+        } else {
+            ++mDismissAnimationRefCount;
+            performDismiss(collapse);
+        }
+    }
+
+    private void slideBack(View slideInView){
+        slideBack(slideInView, 0);
+    }
+
+    private void slideBack(View slideInView, float velocityX){
+        mSettleAnimator.settle(slideInView, 0, velocityX, 1, null);
+    }
+
+    private void performDismiss(View dismissView) {
+        CollapseAnimation collapse = mCollapsePool.obtain();
+        collapse.dismisses.add(obtainPendingDismiss(dismissView));
+        performDismiss(collapse);
+    }
+
+    private void performDismiss(CollapseAnimation collapse) {
+        // Animate the dismissed list items to zero-height together and fire the dismiss callback
+        // when all dismissed list item animations have completed. This triggers layout on each
+        // animation frame; in the future we may want to do something smarter and more performant.
+        for (int i = 0; i < collapse.dismisses.size(); i++) {
+            mPendingDismisses.add(collapse.dismisses.get(i));
+        }
+        ++mRunningCollapses;
+        collapse.start(mAnimationTime);
+    }
+
+    private PendingDismissData obtainPendingDismiss(View view) {
+        PendingDismissData pendingDismiss = mPendingDismissPool.obtain();
+        pendingDismiss.view = view;
+        pendingDismiss.originalHeight = view.getHeight();
+        return pendingDismiss;
+    }
+
+    /**
+     * Called whenever a swipe or batch of swipes is completely done animating. Once there are no
+     * more active animations all pending dismisses are processed and their views are restored.
+     */
+    private void finishDismissAnimation() {
+        --mDismissAnimationRefCount;
+        if (mDismissAnimationRefCount > 0) return;
+
+        // No active animations, process all pending dismisses.
+
+        ViewGroup.LayoutParams lp;
+        for (int i = 0; i < mPendingDismisses.size(); i++) {
+            PendingDismissData pendingDismiss = mPendingDismisses.get(i);
+            // Reset view presentation
+            pendingDismiss.view.setAlpha(1f);
+            pendingDismiss.view.setTranslationX(0);
+            lp = pendingDismiss.view.getLayoutParams();
+            lp.height = pendingDismiss.originalHeight;
+            pendingDismiss.view.setLayoutParams(lp);
+
+            // Don't hold on to the view once we're done with it
+            pendingDismiss.view = null;
+            mPendingDismissPool.release(pendingDismiss);
+        }
+
+        // Send a cancel event
+        long time = SystemClock.uptimeMillis();
+        MotionEvent cancelEvent = MotionEvent.obtain(time, time,
+                MotionEvent.ACTION_CANCEL, 0, 0, 0);
+        mDispatchingCancel = true;
+        mListView.dispatchTouchEvent(cancelEvent);
+        mDispatchingCancel = false;
+        cancelEvent.recycle();
 
-        mPendingDismisses.add(new PendingDismissData(dismissPosition, dismissView));
-        animator.start();
+        mPendingDismisses.clear();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2014 Wouter Dullaert
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wdullaer.swipeactionadapter;
+
+import android.content.Context;
+import android.view.ViewConfiguration;
+
+/**
+ * Shares the swipe machinery between several swipe lists, e.g. a dashboard that shows a number
+ * of lists side by side. Every {@link SwipeActionAdapter} that is given the same coordinator
+ * with {@link SwipeActionAdapter#setSwipeCoordinator(SwipeCoordinator)} uses:
+ * <ul>
+ *     <li>the same touch configuration, which is only read once</li>
+ *     <li>the same animator and frame clock for the rows that settle into place</li>
+ *     <li>the same cache of backgrounds that are not attached to a row</li>
+ * </ul>
+ * On top of that only one row across all of these lists can be swiped at a time: a swipe that
+ * starts while another one is still being dragged is ignored.
+ *
+ * <p>A coordinator must only be used on the UI thread.</p>
+ */
+public class SwipeCoordinator {
+    // Cached ViewConfiguration and system-wide constant values
+    private final int mSlop;
+    private final int mMinFlingVelocity;
+    private final int mMaxFlingVelocity;
+    private final long mAnimationTime;
+
+    private final SettleAnimator mSettleAnimator;
+    private final BackgroundCache mBackgroundCache;
+
+    // The gesture that currently owns the single swipe
+    private Object mEngaged;
+
+    /**
+     * Create a coordinator to share between swipe lists, that caches up to 16 backgrounds
+     *
+     * @param context the context of the lists
+     */
+    public SwipeCoordinator(Context context){
+        this(context, 16);
+    }
+
+    /**
+     * Create a coordinator to share between swipe lists
+     *
+     * @param context the context of the lists
+     * @param backgroundCacheSize the number of backgrounds to cache outside of any row
+     */
+    public SwipeCoordinator(Context context, int backgroundCacheSize){
+        ViewConfiguration vc = ViewConfiguration.get(context);
+        mSlop = vc.getScaledTouchSlop();
+        mMinFlingVelocity = vc.getScaledMinimumFlingVelocity() * 16;
+        mMaxFlingVelocity = vc.getScaledMaximumFlingVelocity();
+        mAnimationTime = context.getResources().getInteger(
+                android.R.integer.config_shortAnimTime);
+        mSettleAnimator = new SettleAnimator(new ChoreographerFrameClock(), mAnimationTime);
+        mBackgroundCache = new BackgroundCache(backgroundCacheSize);
+    }
+
+    /**
+     * Set the clock that drives the animations of swiped rows in all coordinated lists.
+     * The default clock is synced with the display, you should only need this to control the
+     * animations from a test.
+     *
+     * @param clock the clock to use
+     * @return A reference to the current instance so that commands can be chained
+     */
+    public SwipeCoordinator setFrameClock(FrameClock clock){
+        mSettleAnimator.setFrameClock(clock);
+        return this;
+    }
+
+    int getSlop(){
+        return mSlop;
+    }
+
+    int getMinFlingVelocity(){
+        return mMinFlingVelocity;
+    }
+
+    int getMaxFlingVelocity(){
+        return mMaxFlingVelocity;
+    }
+
+    long getAnimationTime(){
+        return mAnimationTime;
+    }
+
+    SettleAnimator getSettleAnimator(){
+        return mSettleAnimator;
+    }
+
+    BackgroundCache getBackgroundCache(){
+        return mBackgroundCache;
+    }
+
+    /**
+     * Ask whether a gesture may start swiping
+     *
+     * @param gesture the gesture that wants to swipe
+     * @return true if the gesture now owns the swipe, false if another gesture does
+     */
+    boolean engage(Object gesture){
+        if(mEngaged != null && mEngaged != gesture) return false;
+        mEngaged = gesture;
+        return true;
+    }
+
+    /**
+     * Let go of the swipe, if the gesture owns it
+     *
+     * @param gesture the gesture that is done
+     */
+    void release(Object gesture){
+        if(mEngaged == gesture) mEngaged = null;
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2014 Wouter Dullaert
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wdullaer.swipeactionadapter;
+
+/**
+ * A snapshot of the views and objects a {@link SwipeActionAdapter} holds on to, as returned by
+ * {@link SwipeActionAdapter#getDiagnostics()}. The numbers don't change after the snapshot has
+ * been taken.
+ */
+public final class SwipeDiagnostics {
+    private final int mRowCount;
+    // Indexed by SwipeDirections.toIndex(direction)
+    private final int[] mBackgroundCounts;
+    private final int mPendingDismissCount;
+    private final int mRunningAnimationCount;
+    private final int mCachedWidth;
+    private final int mCachedThresholdCount;
+    private final int mPooledCount;
+    private final int mCachedBackgroundCount;
+    private final int mPrefetchedRowCount;
+
+    SwipeDiagnostics(int rowCount, int[] backgroundCounts, int pendingDismissCount,
+                     int runningAnimationCount, int cachedWidth, int cachedThresholdCount,
+                     int pooledCount, int cachedBackgroundCount, int prefetchedRowCount){
+        mRowCount = rowCount;
+        mBackgroundCounts = backgroundCounts;
+        mPendingDismissCount = pendingDismissCount;
+        mRunningAnimationCount = runningAnimationCount;
+        mCachedWidth = cachedWidth;
+        mCachedThresholdCount = cachedThresholdCount;
+        mPooledCount = pooledCount;
+        mCachedBackgroundCount = cachedBackgroundCount;
+        mPrefetchedRowCount = prefetchedRowCount;
+    }
+
+    /**
+     * Returns the number of SwipeViewGroups that are still alive, on screen or in the recycler
+     */
+    public int getRowCount(){
+        return mRowCount;
+    }
+
+    /**
+     * Returns the number of inflated backgrounds for a direction, over all live rows
+     *
+     * @param direction the direction of the backgrounds
+     */
+    public int getBackgroundCount(int direction){
+        int index = SwipeDirections.toIndex(direction);
+        return index < mBackgroundCounts.length ? mBackgroundCounts[index] : 0;
+    }
+
+    /**
+     * Returns the number of inflated backgrounds over all directions and live rows
+     */
+    public int getBackgroundCount(){
+        int count = 0;
+        for(int i=0;i<mBackgroundCounts.length;i++) count += mBackgroundCounts[i];
+        return count;
+    }
+
+    /**
+     * Returns the number of dismissed rows that are held until their animations are done
+     */
+    public int getPendingDismissCount(){
+        return mPendingDismissCount;
+    }
+
+    /**
+     * Returns the number of running swipe and dismiss animations. Settle animations are counted
+     * for all lists that share a {@link SwipeCoordinator}.
+     */
+    public int getRunningAnimationCount(){
+        return mRunningAnimationCount;
+    }
+
+    /**
+     * Returns the row width the swipe thresholds are cached for, in pixels
+     */
+    public int getCachedWidth(){
+        return mCachedWidth;
+    }
+
+    /**
+     * Returns the number of swipe thresholds that are cached in pixels
+     */
+    public int getCachedThresholdCount(){
+        return mCachedThresholdCount;
+    }
+
+    /**
+     * Returns the number of idle gesture, animation and dismiss records kept for reuse
+     */
+    public int getPooledCount(){
+        return mPooledCount;
+    }
+
+    /**
+     * Returns the number of inflated backgrounds that are cached for reuse, outside of any row
+     */
+    public int getCachedBackgroundCount(){
+        return mCachedBackgroundCount;
+    }
+
+    /**
+     * Returns the number of rows held in memory by a wrapped {@link PrefetchingAdapter}
+     */
+    public int getPrefetchedRowCount(){
+        return mPrefetchedRowCount;
+    }
+
+    @Override
+    public String toString(){
+        return "SwipeDiagnostics{rows=" + mRowCount
+                + ", backgrounds=" + getBackgroundCount()
+                + ", pendingDismisses=" + mPendingDismissCount
+                + ", runningAnimations=" + mRunningAnimationCount
+                + ", cachedWidth=" + mCachedWidth
+                + ", cachedThresholds=" + mCachedThresholdCount
+                + ", pooled=" + mPooledCount
+                + ", cachedBackgrounds=" + mCachedBackgroundCount
+                + ", prefetchedRows=" + mPrefetchedRowCount + "}";
+    }
+}
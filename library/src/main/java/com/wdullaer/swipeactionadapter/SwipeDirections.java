@@ -16,12 +16,12 @@
 
 package com.wdullaer.swipeactionadapter;
 
-import java.util.Arrays;
-import java.util.List;
-
 /**
  * Class containing a set of constant directions used throughout the package
  *
+ * Swipes with more stages than normal and far (see {@link SwipeThresholds}) use the stage number
+ * as direction: 3 is the third stage to the right, -3 the third stage to the left, and so on.
+ *
  * Created by wdullaer on 02.07.14.
  */
 public class SwipeDirections {
@@ -32,13 +32,24 @@ public class SwipeDirections {
     public static final int DIRECTION_FAR_RIGHT = 2;
     public static final int DIRECTION_NEUTRAL = 0;
 
-    static List<Integer> getAllDirections(){
-        return Arrays.asList(
-                DIRECTION_FAR_LEFT,
-                DIRECTION_FAR_RIGHT,
-                DIRECTION_NEUTRAL,
-                DIRECTION_NORMAL_LEFT,
-                DIRECTION_NORMAL_RIGHT
-        );
+    /**
+     * Maps a direction onto a dense, non negative index, so directions can be used to index
+     * primitive arrays: 0, 1, -1, 2, -2, ... become 0, 1, 2, 3, 4, ...
+     *
+     * @param direction the direction
+     * @return the index of the direction
+     */
+    static int toIndex(int direction){
+        return direction > 0 ? 2 * direction - 1 : -2 * direction;
+    }
+
+    /**
+     * The inverse of {@link #toIndex(int)}
+     *
+     * @param index the index of a direction
+     * @return the direction
+     */
+    static int fromIndex(int index){
+        return (index & 1) == 1 ? (index + 1) / 2 : -index / 2;
     }
 }
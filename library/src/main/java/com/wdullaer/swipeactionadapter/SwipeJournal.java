@@ -0,0 +1,448 @@
+/*
+ * Copyright 2014 Wouter Dullaert
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wdullaer.swipeactionadapter;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only file that records swipe actions before they are handed to the SwipeActionListener.
+ * This lets an app hold on to swiped items in memory and write them to its own storage in large
+ * batches: actions that hadn't been committed yet when the process died can be replayed from the
+ * journal on the next start.
+ *
+ * <p>Every action gets an increasing sequence number, the latest one is returned by
+ * {@link #getLastSequence()}. Once the app has stored actions up to a certain sequence number it
+ * calls {@link #commit(long)}, and {@link #compact()} drops the committed actions from the file.
+ * Appends are buffered and only forced to disk every syncInterval actions, on commit, or when
+ * {@link #sync()} is called, so a crash can lose at most the actions since the last sync.</p>
+ *
+ * <p>{@link #append(long, int, long)} only hands the action to a background thread, so it can be
+ * called from the UI thread. All other methods wait for the actions that were appended before
+ * them to be written.</p>
+ *
+ * <p>A record that was only partially written when the process died is detected by its checksum
+ * and discarded when the journal is opened.</p>
+ */
+public class SwipeJournal {
+    private static final byte TYPE_ACTION = 1;
+    private static final byte TYPE_COMMIT = 2;
+    // type, sequence, item id, direction, timestamp, checksum
+    private static final int RECORD_SIZE = 1 + 8 + 8 + 4 + 8 + 4;
+    private static final int CHECKSUM_OFFSET = RECORD_SIZE - 4;
+    private static final String TAG = "SwipeJournal";
+
+    private final File mFile;
+    private final int mSyncInterval;
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, TAG);
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+    // Sequence numbers are handed out on the calling thread, in the order the writes are queued
+    private final Object mSequenceLock = new Object();
+    private long mNextSequence;
+
+    // Only touched on the journal thread, once the constructor is done
+    private final ByteBuffer mRecord = ByteBuffer.allocate(RECORD_SIZE);
+    private final CRC32 mChecksum = new CRC32();
+    private FileOutputStream mFileStream;
+    private BufferedOutputStream mStream;
+    private long mCommittedSequence = -1;
+    private int mUnsynced;
+    // The first failed background append, reported by the next call that can throw
+    private volatile IOException mWriteError;
+
+    /**
+     * Open a journal that syncs to disk after every 32 actions
+     *
+     * @param file the file to keep the journal in, created if it doesn't exist
+     * @throws IOException if the file can't be read or written
+     */
+    public SwipeJournal(File file) throws IOException {
+        this(file, 32);
+    }
+
+    /**
+     * Open a journal
+     *
+     * @param file the file to keep the journal in, created if it doesn't exist
+     * @param syncInterval the number of actions after which the journal is forced to disk
+     * @throws IOException if the file can't be read or written
+     */
+    public SwipeJournal(File file, int syncInterval) throws IOException {
+        if(syncInterval < 1) throw new IllegalArgumentException("syncInterval must be at least 1");
+        mFile = file;
+        mSyncInterval = syncInterval;
+
+        long validLength = scan(null);
+        if(mFile.exists() && mFile.length() > validLength){
+            // Drop a record that was torn by a crash, so new records don't end up behind it
+            RandomAccessFile truncate = new RandomAccessFile(mFile, "rw");
+            try {
+                truncate.setLength(validLength);
+            } finally {
+                truncate.close();
+            }
+        }
+        openStream();
+    }
+
+    /**
+     * Record a swipe action. The action is written on a background thread, this method doesn't
+     * wait for it.
+     *
+     * @param itemId the id of the swiped item
+     * @param direction the direction of the swipe
+     * @param timestamp the time of the swipe, in milliseconds
+     * @return the sequence number of the action
+     * @throws IOException if an earlier action couldn't be written, or the journal is closed
+     */
+    public long append(final long itemId, final int direction, final long timestamp) throws IOException {
+        throwWriteError();
+        synchronized (mSequenceLock) {
+            final long sequence = mNextSequence++;
+            try {
+                mExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        if(mWriteError != null) return;
+                        try {
+                            writeRecord(TYPE_ACTION, sequence, itemId, direction, timestamp);
+                            if(++mUnsynced >= mSyncInterval) syncStream();
+                        } catch (IOException e) {
+                            mWriteError = e;
+                        }
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                mNextSequence--;
+                throw new IOException("The journal is closed");
+            }
+            return sequence;
+        }
+    }
+
+    /**
+     * Returns the sequence number of the latest appended action, or -1 if there is none. Call this
+     * once the SwipeActionListener has stored the actions it was handed, and commit up to it.
+     */
+    public long getLastSequence(){
+        synchronized (mSequenceLock) {
+            return mNextSequence - 1;
+        }
+    }
+
+    /**
+     * Mark all actions up to and including a sequence number as stored by the app. The commit is
+     * forced to disk before this method returns.
+     *
+     * @param sequence the sequence number of the last stored action
+     * @throws IOException if the commit can't be written
+     */
+    public void commit(final long sequence) throws IOException {
+        await(new Callable<Void>() {
+            @Override
+            public Void call() throws IOException {
+                if(sequence <= mCommittedSequence) return null;
+                mCommittedSequence = sequence;
+                writeRecord(TYPE_COMMIT, sequence, 0, SwipeDirections.DIRECTION_NEUTRAL, 0);
+                syncStream();
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Force all recorded actions to disk
+     *
+     * @throws IOException if the journal can't be written
+     */
+    public void sync() throws IOException {
+        await(new Callable<Void>() {
+            @Override
+            public Void call() throws IOException {
+                syncStream();
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Read the actions that haven't been committed yet, in the order they were recorded.
+     * Call this on startup to replay the actions that were lost.
+     *
+     * @return the uncommitted actions
+     * @throws IOException if the journal can't be read
+     */
+    public List<Entry> readUncommitted() throws IOException {
+        return await(new Callable<List<Entry>>() {
+            @Override
+            public List<Entry> call() throws IOException {
+                return readEntries();
+            }
+        });
+    }
+
+    /**
+     * Rewrite the journal without the committed actions
+     *
+     * @throws IOException if the journal can't be rewritten, the old journal is left intact
+     */
+    public void compact() throws IOException {
+        await(new Callable<Void>() {
+            @Override
+            public Void call() throws IOException {
+                rewrite();
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Sync and close the journal. It can't be used anymore afterwards.
+     *
+     * @throws IOException if the journal can't be written
+     */
+    public void close() throws IOException {
+        try {
+            await(new Callable<Void>() {
+                @Override
+                public Void call() throws IOException {
+                    closeStream();
+                    return null;
+                }
+            });
+        } finally {
+            mExecutor.shutdown();
+        }
+    }
+
+    /**
+     * Run a task on the journal thread, after the queued appends, and wait for it
+     */
+    private <T> T await(Callable<T> task) throws IOException {
+        Future<T> future;
+        try {
+            future = mExecutor.submit(task);
+        } catch (RejectedExecutionException e) {
+            throw new IOException("The journal is closed");
+        }
+        try {
+            T result = future.get();
+            throwWriteError();
+            return result;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the journal");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if(cause instanceof IOException) throw (IOException) cause;
+            if(cause instanceof RuntimeException) throw (RuntimeException) cause;
+            throw new IOException(cause);
+        }
+    }
+
+    private void throwWriteError() throws IOException {
+        IOException error = mWriteError;
+        if(error != null) throw new IOException("An earlier action could not be written", error);
+    }
+
+    private void syncStream() throws IOException {
+        mStream.flush();
+        mFileStream.getFD().sync();
+        mUnsynced = 0;
+    }
+
+    private List<Entry> readEntries() throws IOException {
+        mStream.flush();
+        List<Entry> entries = new ArrayList<Entry>();
+        scan(entries);
+        return entries;
+    }
+
+    private void rewrite() throws IOException {
+        List<Entry> entries = readEntries();
+        closeStream();
+
+        File temp = new File(mFile.getPath() + ".tmp");
+        mFileStream = new FileOutputStream(temp);
+        mStream = new BufferedOutputStream(mFileStream);
+        boolean written = false;
+        try {
+            // Keep the commit mark, so sequence numbers carry on where they left off
+            if(mCommittedSequence >= 0) {
+                writeRecord(TYPE_COMMIT, mCommittedSequence, 0, SwipeDirections.DIRECTION_NEUTRAL, 0);
+            }
+            for(int i=0;i<entries.size();i++){
+                Entry entry = entries.get(i);
+                writeRecord(TYPE_ACTION, entry.mSequence, entry.mItemId, entry.mDirection, entry.mTimestamp);
+            }
+            syncStream();
+            written = true;
+        } finally {
+            closeStream();
+            if(!written) {
+                temp.delete();
+                openStream();
+            }
+        }
+        if(!temp.renameTo(mFile)) {
+            temp.delete();
+            openStream();
+            throw new IOException("Could not replace " + mFile);
+        }
+        openStream();
+    }
+
+    private void closeStream() throws IOException {
+        if(mStream == null) return;
+        try {
+            syncStream();
+        } finally {
+            mStream.close();
+            mStream = null;
+            mFileStream = null;
+        }
+    }
+
+    private void openStream() throws IOException {
+        mFileStream = new FileOutputStream(mFile, true);
+        mStream = new BufferedOutputStream(mFileStream);
+        mUnsynced = 0;
+    }
+
+    private void writeRecord(byte type, long sequence, long itemId, int direction, long timestamp) throws IOException {
+        mRecord.clear();
+        mRecord.put(type).putLong(sequence).putLong(itemId).putInt(direction).putLong(timestamp);
+        mChecksum.reset();
+        mChecksum.update(mRecord.array(), 0, CHECKSUM_OFFSET);
+        mRecord.putInt((int) mChecksum.getValue());
+        mStream.write(mRecord.array(), 0, RECORD_SIZE);
+    }
+
+    /**
+     * Read the journal from disk, updating the sequence numbers on the way
+     *
+     * @param output a list to add the uncommitted actions to, may be null
+     * @return the length of the valid part of the file
+     */
+    private long scan(List<Entry> output) throws IOException {
+        if(!mFile.exists()) return 0;
+
+        byte[] record = new byte[RECORD_SIZE];
+        ByteBuffer buffer = ByteBuffer.wrap(record);
+        CRC32 checksum = new CRC32();
+        long length = 0;
+        DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(mFile)));
+        try {
+            while(true) {
+                try {
+                    input.readFully(record);
+                } catch (EOFException e) {
+                    break;
+                }
+                checksum.reset();
+                checksum.update(record, 0, CHECKSUM_OFFSET);
+                buffer.clear();
+                byte type = buffer.get();
+                long sequence = buffer.getLong();
+                long itemId = buffer.getLong();
+                int direction = buffer.getInt();
+                long timestamp = buffer.getLong();
+                if(buffer.getInt() != (int) checksum.getValue()) break;
+
+                if(type == TYPE_ACTION){
+                    if(output != null) output.add(new Entry(sequence, itemId, direction, timestamp));
+                } else if(type == TYPE_COMMIT){
+                    mCommittedSequence = Math.max(mCommittedSequence, sequence);
+                } else {
+                    break;
+                }
+                synchronized (mSequenceLock) {
+                    mNextSequence = Math.max(mNextSequence, sequence + 1);
+                }
+                length += RECORD_SIZE;
+            }
+        } finally {
+            input.close();
+        }
+
+        if(output != null){
+            // Commits are written after the actions they cover, so filter at the end
+            for(int i=output.size()-1;i>=0;i--){
+                if(output.get(i).mSequence <= mCommittedSequence) output.remove(i);
+            }
+        }
+        return length;
+    }
+
+    /**
+     * A swipe action that was read back from the journal
+     */
+    public static final class Entry {
+        private final long mSequence;
+        private final long mItemId;
+        private final int mDirection;
+        private final long mTimestamp;
+
+        Entry(long sequence, long itemId, int direction, long timestamp){
+            mSequence = sequence;
+            mItemId = itemId;
+            mDirection = direction;
+            mTimestamp = timestamp;
+        }
+
+        public long getSequence(){
+            return mSequence;
+        }
+
+        public long getItemId(){
+            return mItemId;
+        }
+
+        public int getDirection(){
+            return mDirection;
+        }
+
+        public long getTimestamp(){
+            return mTimestamp;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2014 Wouter Dullaert
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wdullaer.swipeactionadapter;
+
+/**
+ * Describes at which distances a swipe moves on to its next stage. The first stage starts as soon
+ * as the swipe engages, every following stage starts at its own fraction of the row width.
+ * A swipe in stage n on the right side has direction n, on the left side it has direction -n, so
+ * the default thresholds (a single extra stage at half the width) produce the NORMAL and FAR
+ * directions from {@link SwipeDirections}.
+ */
+public class SwipeThresholds {
+    private final float[] mLeftFractions;
+    private final float[] mRightFractions;
+
+    /**
+     * Create thresholds that are the same on both sides
+     *
+     * @param fractions the fractions of the row width at which stage 2, 3, ... start, in
+     *                  ascending order
+     */
+    public SwipeThresholds(float... fractions){
+        this(fractions, fractions);
+    }
+
+    /**
+     * Create thresholds with a different set of stages on each side
+     *
+     * @param leftFractions the fractions of the row width at which stage 2, 3, ... start when
+     *                      swiping left, in ascending order
+     * @param rightFractions the fractions of the row width at which stage 2, 3, ... start when
+     *                       swiping right, in ascending order
+     */
+    public SwipeThresholds(float[] leftFractions, float[] rightFractions){
+        mLeftFractions = checkFractions(leftFractions);
+        mRightFractions = checkFractions(rightFractions);
+    }
+
+    /**
+     * Returns the number of stages on one side
+     *
+     * @param right true for the right side, false for the left side
+     * @return the number of stages, including the first one
+     */
+    public int getStageCount(boolean right){
+        return (right ? mRightFractions : mLeftFractions).length + 1;
+    }
+
+    /**
+     * Compute the thresholds of one side in pixels for the given width. The array is reused if it
+     * has the right size already.
+     *
+     * @param right true for the right side, false for the left side
+     * @param width the width of the rows in pixels
+     * @param output an array to reuse, may be null
+     * @return the distances at which stage 2, 3, ... start
+     */
+    int[] toPixels(boolean right, int width, int[] output){
+        float[] fractions = right ? mRightFractions : mLeftFractions;
+        if(output == null || output.length != fractions.length) output = new int[fractions.length];
+        for(int i=0;i<fractions.length;i++) output[i] = (int)(fractions[i] * width);
+        return output;
+    }
+
+    /**
+     * Look up the stage for a distance. This doesn't allocate, so it is safe to call on every
+     * touch event.
+     *
+     * @param distance the absolute distance that was swiped, in pixels
+     * @param thresholds the pixel thresholds of the side that is being swiped
+     * @return the stage, starting at 1
+     */
+    static int getStage(float distance, int[] thresholds){
+        int stage = 1;
+        while(stage <= thresholds.length && distance > thresholds[stage - 1]) stage++;
+        return stage;
+    }
+
+    private static float[] checkFractions(float[] fractions){
+        for(int i=0;i<fractions.length;i++){
+            if(fractions[i] <= 0 || fractions[i] > 1 || (i > 0 && fractions[i] <= fractions[i - 1])){
+                throw new IllegalArgumentException("Thresholds must be ascending fractions between 0 and 1");
+            }
+        }
+        return fractions.clone();
+    }
+}
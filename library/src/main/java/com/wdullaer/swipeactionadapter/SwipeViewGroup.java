@@ -18,7 +18,6 @@ package com.wdullaer.swipeactionadapter;
 
 import android.content.Context;
 import android.util.AttributeSet;
-import android.util.SparseArray;
 import android.view.View;
 import android.widget.FrameLayout;
 
@@ -31,7 +30,13 @@ public class SwipeViewGroup extends FrameLayout {
     private View contentView = null;
 
     private int visibleView = SwipeDirections.DIRECTION_NEUTRAL;
-    private SparseArray<View> mBackgroundMap = new SparseArray<View>();
+    private boolean mFixedBackgrounds = false;
+    private int mBackgroundsWidth = -1;
+    private int mViewType = 0;
+    // Indexed by SwipeDirections.toIndex(direction)
+    private View[] mBackgroundMap = new View[5];
+    // The layouts the backgrounds were inflated from, 0 if unknown. Same indexing
+    private int[] mBackgroundResIds = new int[5];
 
     /**
      * Standard android View constructor
@@ -40,6 +45,8 @@ public class SwipeViewGroup extends FrameLayout {
      */
     public SwipeViewGroup(Context context) {
         super(context);
+        // Backgrounds that swipe in sit outside of our bounds
+        setClipChildren(false);
     }
 
     /**
@@ -50,6 +57,7 @@ public class SwipeViewGroup extends FrameLayout {
      */
     public SwipeViewGroup(Context context, AttributeSet attrs) {
         super(context,attrs);
+        setClipChildren(false);
     }
 
     /**
@@ -61,6 +69,7 @@ public class SwipeViewGroup extends FrameLayout {
      */
     public SwipeViewGroup(Context context, AttributeSet attrs, int defStyle) {
         super(context,attrs,defStyle);
+        setClipChildren(false);
     }
 
     /**
@@ -72,28 +81,88 @@ public class SwipeViewGroup extends FrameLayout {
      * @return A reference to the a layout so commands can be chained
      */
     public SwipeViewGroup addBackground(View background, int direction){
-        if(mBackgroundMap.get(direction) != null) removeView(mBackgroundMap.get(direction));
-
-        background.setVisibility(View.INVISIBLE);
-        mBackgroundMap.put(direction,background);
-        addView(background);
+        replaceBackground(background, direction, 0);
         return this;
     }
 
+    /**
+     * Swap the background of a key for another one
+     *
+     * @param background The View to be added to the Layout, or null to remove the background
+     * @param direction The key to be used to find it again
+     * @param resId The layout the background was inflated from, 0 if unknown
+     * @return the background that was replaced, or null if there was none
+     */
+    View replaceBackground(View background, int direction, int resId){
+        int index = SwipeDirections.toIndex(direction);
+        if(index >= mBackgroundMap.length){
+            View[] backgrounds = new View[index + 1];
+            System.arraycopy(mBackgroundMap, 0, backgrounds, 0, mBackgroundMap.length);
+            mBackgroundMap = backgrounds;
+            int[] resIds = new int[index + 1];
+            System.arraycopy(mBackgroundResIds, 0, resIds, 0, mBackgroundResIds.length);
+            mBackgroundResIds = resIds;
+        }
+        View previous = mBackgroundMap[index];
+        if(previous != null) removeView(previous);
+        if(visibleView == direction) visibleView = SwipeDirections.DIRECTION_NEUTRAL;
+
+        mBackgroundMap[index] = background;
+        mBackgroundResIds[index] = background == null ? 0 : resId;
+        if(background != null) {
+            background.setVisibility(View.INVISIBLE);
+            // Backgrounds always go behind the contentView
+            addView(background, 0);
+            // The new background gets positioned in the next layout pass
+            mBackgroundsWidth = -1;
+        }
+        return previous;
+    }
+
+    /**
+     * Returns the number of slots for backgrounds, indexed by SwipeDirections.toIndex
+     */
+    int getBackgroundSlotCount(){
+        return mBackgroundMap.length;
+    }
+
+    /**
+     * Returns the layout the background of a key was inflated from
+     *
+     * @param direction The key of the background
+     * @return the layout resource id, or 0 if there is no background or its layout is unknown
+     */
+    int getBackgroundResId(int direction){
+        int index = SwipeDirections.toIndex(direction);
+        return index < mBackgroundResIds.length ? mBackgroundResIds[index] : 0;
+    }
+
     /**
      * Show the View linked to a key. Don't do anything if the key is not found
      *
      * @param direction The key of the View to be shown
      */
     public void showBackground(int direction){
-        if(mBackgroundMap.get(direction) == null) return;
+        View background = getBackgroundView(direction);
+        if(background == null) return;
 
-        if(visibleView != SwipeDirections.DIRECTION_NEUTRAL)
-            mBackgroundMap.get(visibleView).setVisibility(View.INVISIBLE);
-        mBackgroundMap.get(direction).setVisibility(View.VISIBLE);
+        View previous = getBackgroundView(visibleView);
+        if(previous != null) previous.setVisibility(View.INVISIBLE);
+        background.setVisibility(View.VISIBLE);
         visibleView = direction;
     }
 
+    /**
+     * Returns the background View linked to a key
+     *
+     * @param direction The key of the View
+     * @return the background, or null if there is none for this key
+     */
+    public View getBackgroundView(int direction){
+        int index = SwipeDirections.toIndex(direction);
+        return index < mBackgroundMap.length ? mBackgroundMap[index] : null;
+    }
+
     /**
      * Add a contentView to the Layout
      *
@@ -101,7 +170,10 @@ public class SwipeViewGroup extends FrameLayout {
      * @return A reference to the layout so commands can be chained
      */
     public SwipeViewGroup setContentView(View contentView){
-        if(this.contentView != null) removeView(contentView);
+        // Rebinding usually hands back the same View, don't trigger a relayout for nothing
+        if(this.contentView == contentView) return this;
+
+        if(this.contentView != null) removeView(this.contentView);
         addView(contentView);
         this.contentView = contentView;
 
@@ -118,14 +190,60 @@ public class SwipeViewGroup extends FrameLayout {
     }
 
     /**
-     * Move all backgrounds to the edge of the Layout so they can be swiped in
+     * Set the view type of the rows this Layout holds, so it is only recycled for rows with
+     * the same set of backgrounds
+     *
+     * @param viewType the view type, as returned by the adapter
+     * @return A reference to the a layout so commands can be chained
+     */
+    public SwipeViewGroup setViewType(int viewType){
+        mViewType = viewType;
+        return this;
+    }
+
+    /**
+     * Returns the view type of the rows this Layout holds
+     *
+     * @return the view type, as returned by the adapter
+     */
+    public int getViewType(){
+        return mViewType;
+    }
+
+    /**
+     * Set whether the backgrounds should be fixed or swipe in from the side
+     * The default value for this property is false: backgrounds will swipe in
+     *
+     * @param fixedBackgrounds true for fixed backgrounds, false for swipe in
+     */
+    public void setFixedBackgrounds(boolean fixedBackgrounds){
+        if(mFixedBackgrounds == fixedBackgrounds) return;
+        mFixedBackgrounds = fixedBackgrounds;
+        translateBackgrounds();
+    }
+
+    /**
+     * Position the backgrounds whenever our width changes. Rows move around all the time while
+     * scrolling, but that doesn't affect where the backgrounds should be.
+     */
+    @Override
+    protected void onLayout(boolean changed, int left, int top, int right, int bottom) {
+        super.onLayout(changed, left, top, right, bottom);
+        if(right - left != mBackgroundsWidth){
+            mBackgroundsWidth = right - left;
+            translateBackgrounds();
+        }
+    }
+
+    /**
+     * Move all backgrounds to the edge of the Layout so they can be swiped in, or back behind the
+     * contentView if the backgrounds are fixed. This happens automatically when the Layout is resized.
      */
     public void translateBackgrounds(){
-        this.setClipChildren(false);
-        for(int i=0;i<mBackgroundMap.size();i++){
-            int key = mBackgroundMap.keyAt(i);
-            View value = mBackgroundMap.valueAt(i);
-            value.setTranslationX(-Integer.signum(key)*value.getWidth());
+        for(int i=0;i<mBackgroundMap.length;i++){
+            View value = mBackgroundMap[i];
+            if(value == null) continue;
+            value.setTranslationX(mFixedBackgrounds ? 0 : -Integer.signum(SwipeDirections.fromIndex(i))*value.getWidth());
         }
     }
 }
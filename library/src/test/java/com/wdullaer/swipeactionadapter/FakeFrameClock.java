@@ -0,0 +1,73 @@
+/*
+ * Copyright 2014 Wouter Dullaert
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wdullaer.swipeactionadapter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * FrameClock that only produces frames when a test asks for them
+ */
+class FakeFrameClock implements FrameClock {
+    private final List<FrameCallback> mCallbacks = new ArrayList<FrameCallback>();
+    private final List<FrameCallback> mDispatching = new ArrayList<FrameCallback>();
+    private long mNanoTime = 0;
+
+    @Override
+    public long nanoTime() {
+        return mNanoTime;
+    }
+
+    @Override
+    public void postFrameCallback(FrameCallback callback) {
+        mCallbacks.add(callback);
+    }
+
+    @Override
+    public void removeFrameCallback(FrameCallback callback) {
+        mCallbacks.remove(callback);
+    }
+
+    /**
+     * Move the clock forward by one frame and call everything that was waiting for it
+     *
+     * @param frameMillis the length of the frame
+     */
+    void frame(long frameMillis) {
+        mNanoTime += frameMillis * 1000000L;
+        mDispatching.addAll(mCallbacks);
+        mCallbacks.clear();
+        for (int i = 0; i < mDispatching.size(); i++) {
+            mDispatching.get(i).doFrame(mNanoTime);
+        }
+        mDispatching.clear();
+    }
+
+    /**
+     * Produce frames until nothing is waiting for one anymore
+     *
+     * @return the number of frames that were produced
+     */
+    int runToIdle() {
+        int frames = 0;
+        while (!mCallbacks.isEmpty()) {
+            if (++frames > 1000) throw new IllegalStateException("Animation never settled");
+            frame(16);
+        }
+        return frames;
+    }
+}
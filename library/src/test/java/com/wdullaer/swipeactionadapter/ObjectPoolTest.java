@@ -0,0 +1,76 @@
+/*
+ * Copyright 2014 Wouter Dullaert
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wdullaer.swipeactionadapter;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class ObjectPoolTest {
+    private static class CountingPool extends ObjectPool<Object> {
+        int created = 0;
+
+        CountingPool(int maxSize) {
+            super(maxSize);
+        }
+
+        @Override
+        protected Object create() {
+            created++;
+            return new Object();
+        }
+    }
+
+    @Test
+    public void reusesReleasedObjects() {
+        CountingPool pool = new CountingPool(4);
+        Object first = pool.obtain();
+        pool.release(first);
+
+        for (int i = 0; i < 100; i++) {
+            Object instance = pool.obtain();
+            assertSame(first, instance);
+            pool.release(instance);
+        }
+        assertEquals(1, pool.created);
+        assertEquals(1, pool.getCreatedCount());
+        assertEquals(1, pool.size());
+    }
+
+    @Test
+    public void holdsAtMostMaxSizeObjects() {
+        CountingPool pool = new CountingPool(2);
+        Object[] objects = new Object[5];
+        for (int i = 0; i < objects.length; i++) objects[i] = pool.obtain();
+        for (int i = 0; i < objects.length; i++) pool.release(objects[i]);
+
+        assertEquals(5, pool.created);
+        assertEquals(2, pool.size());
+    }
+
+    @Test
+    public void clearDropsIdleObjects() {
+        CountingPool pool = new CountingPool(2);
+        pool.release(pool.obtain());
+        pool.clear();
+
+        assertEquals(0, pool.size());
+        pool.obtain();
+        assertEquals(2, pool.created);
+    }
+}
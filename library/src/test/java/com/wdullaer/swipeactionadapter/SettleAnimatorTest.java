@@ -0,0 +1,183 @@
+/*
+ * Copyright 2014 Wouter Dullaert
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wdullaer.swipeactionadapter;
+
+import android.view.View;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 19)
+public class SettleAnimatorTest {
+    private FakeFrameClock mClock;
+    private SettleAnimator mAnimator;
+
+    @Before
+    public void setUp() {
+        mClock = new FakeFrameClock();
+        mAnimator = new SettleAnimator(mClock, 200);
+    }
+
+    @Test
+    public void settlesAndReleasesItsRecord() {
+        View view = new View(RuntimeEnvironment.application);
+        mAnimator.settle(view, 100, 0, 1, null);
+        assertEquals(1, mAnimator.getRunningCount());
+        assertEquals(0, mAnimator.getPooledCount());
+
+        mClock.runToIdle();
+        assertEquals(0, mAnimator.getRunningCount());
+        assertEquals(1, mAnimator.getPooledCount());
+    }
+
+    @Test
+    public void doesNotAllocateRecordsInSteadyState() {
+        View view = new View(RuntimeEnvironment.application);
+        for (int i = 0; i < 100; i++) {
+            mAnimator.settle(view, i % 2 == 0 ? 100 : -100, 0, 1, null);
+            mClock.runToIdle();
+        }
+        // Every new record would end up in the pool, so a single pooled record means one was
+        // allocated in total
+        assertEquals(1, mAnimator.getPooledCount());
+    }
+
+    @Test
+    public void settlingTheSameViewAgainReusesItsRecord() {
+        View view = new View(RuntimeEnvironment.application);
+        mAnimator.settle(view, 100, 0, 1, null);
+        mClock.frame(16);
+        mAnimator.settle(view, 0, 0, 1, null);
+
+        assertEquals(1, mAnimator.getRunningCount());
+        mClock.runToIdle();
+        assertEquals(1, mAnimator.getPooledCount());
+    }
+
+    @Test
+    public void dismissListenerRunsAfterTheRecordIsReleased() {
+        final View view = new View(RuntimeEnvironment.application);
+        final int[] pooledInListener = new int[]{-1};
+        final View[] settled = new View[1];
+        mAnimator.settle(view, 100, 0, 0, new SettleAnimator.SettleListener() {
+            @Override
+            public void onSettled(View settledView) {
+                settled[0] = settledView;
+                pooledInListener[0] = mAnimator.getPooledCount();
+            }
+        });
+        // A row that is being dismissed can't be taken over
+        assertFalse(mAnimator.cancel(view));
+
+        mClock.runToIdle();
+        assertSame(view, settled[0]);
+        assertEquals(1, pooledInListener[0]);
+        assertEquals(0, mAnimator.getRunningCount());
+        assertTrue(mAnimator.cancel(view));
+    }
+
+    @Test
+    public void pendingListenerIsNotReplaced() {
+        View view = new View(RuntimeEnvironment.application);
+        final int[] settled = new int[1];
+        SettleAnimator.SettleListener listener = new SettleAnimator.SettleListener() {
+            @Override
+            public void onSettled(View settledView) {
+                settled[0]++;
+            }
+        };
+        assertTrue(mAnimator.settle(view, 100, 0, 1, listener));
+        assertFalse(mAnimator.settle(view, 100, 0, 1, listener));
+        assertFalse(mAnimator.settle(view, 0, 0, 1, null));
+
+        mClock.runToIdle();
+        assertEquals(1, settled[0]);
+        assertEquals(1, mAnimator.getPooledCount());
+    }
+
+    @Test
+    public void dismissCyclesDoNotAllocateRecords() {
+        final View view = new View(RuntimeEnvironment.application);
+        final int[] dismissed = new int[1];
+        SettleAnimator.SettleListener slideBack = new SettleAnimator.SettleListener() {
+            @Override
+            public void onSettled(View settledView) {
+                dismissed[0]++;
+                // Like a dismiss that is undone: the row slides back from the listener
+                mAnimator.settle(settledView, 0, 0, 1, null);
+            }
+        };
+        for (int i = 0; i < 50; i++) {
+            mAnimator.settle(view, 100, 500, 0, slideBack);
+            mClock.runToIdle();
+        }
+        assertEquals(50, dismissed[0]);
+        assertEquals(0, mAnimator.getRunningCount());
+        assertEquals(1, mAnimator.getPooledCount());
+    }
+
+    @Test
+    public void releaseAtRestArrivesWithinTheAnimationTime() {
+        float[] distances = {30, 300, 1080, 2560};
+        for (int i = 0; i < distances.length; i++) {
+            long time = timeToArrive(distances[i], 0);
+            assertTrue("Took " + time + "ms over " + distances[i] + "px", time <= 200);
+        }
+    }
+
+    @Test
+    public void flingDismissArrivesSoonerThanARelease() {
+        long release = timeToArrive(1080, 0);
+        long fling = timeToArrive(1080, 8000);
+        assertTrue("Fling took " + fling + "ms, release " + release + "ms", fling < release);
+        assertTrue("Fling took " + fling + "ms", fling < 200);
+    }
+
+    @Test
+    public void trimPoolDropsIdleRecords() {
+        mAnimator.settle(new View(RuntimeEnvironment.application), 100, 0, 1, null);
+        mClock.runToIdle();
+        mAnimator.trimPool();
+        assertEquals(0, mAnimator.getPooledCount());
+    }
+
+    /**
+     * Settle a view that is at 0 and returns the time it took to arrive, in milliseconds
+     */
+    private long timeToArrive(float targetX, float velocityX) {
+        final boolean[] arrived = new boolean[1];
+        long start = mClock.nanoTime();
+        mAnimator.settle(new View(RuntimeEnvironment.application), targetX, velocityX, 1, new SettleAnimator.SettleListener() {
+            @Override
+            public void onSettled(View settledView) {
+                arrived[0] = true;
+            }
+        });
+        while (!arrived[0]) mClock.frame(16);
+        return (mClock.nanoTime() - start) / 1000000L;
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright 2014 Wouter Dullaert
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wdullaer.swipeactionadapter;
+
+import android.os.SystemClock;
+import android.view.MotionEvent;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.AbsListView;
+import android.widget.BaseAdapter;
+import android.widget.ListView;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 19)
+public class SwipeActionTouchListenerTest {
+    private static final int WIDTH = 1080;
+    private static final int ROW_HEIGHT = 100;
+    // More than any pool holds, so a record that is allocated and released every cycle would
+    // also show up in the pooled count
+    private static final int CYCLES = 20;
+
+    private ListView mListView;
+    private FakeFrameClock mClock;
+    private SwipeActionTouchListener mTouchListener;
+    private int mActions;
+    private long mEventTime;
+
+    @Before
+    public void setUp() {
+        mListView = new ListView(RuntimeEnvironment.application);
+        mListView.setAdapter(new RowAdapter());
+        mListView.measure(
+                View.MeasureSpec.makeMeasureSpec(WIDTH, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(10 * ROW_HEIGHT, View.MeasureSpec.EXACTLY));
+        mListView.layout(0, 0, WIDTH, 10 * ROW_HEIGHT);
+
+        mClock = new FakeFrameClock();
+        mTouchListener = new SwipeActionTouchListener(mListView, new SwipeActionTouchListener.ActionCallbacks() {
+            @Override
+            public boolean hasActions(int position) {
+                return true;
+            }
+
+            @Override
+            public boolean onAction(ListView listView, int position, int direction) {
+                mActions++;
+                return true;
+            }
+        });
+        mTouchListener.setFrameClock(mClock);
+        mEventTime = SystemClock.uptimeMillis();
+    }
+
+    @Test
+    public void dismissCyclesDoNotAllocateRecords() {
+        swipe(2, 800, 2);
+        finishAnimations();
+        int created = mTouchListener.getCreatedCount();
+        int pooled = mTouchListener.getPooledCount();
+
+        for (int i = 0; i < CYCLES; i++) {
+            swipe(2, 800, 2);
+            finishAnimations();
+        }
+        assertEquals(CYCLES + 1, mActions);
+        assertEquals(created, mTouchListener.getCreatedCount());
+        assertEquals(pooled, mTouchListener.getPooledCount());
+        assertEquals(0, mTouchListener.getPendingDismissCount());
+        assertEquals(0, mTouchListener.getRunningAnimationCount());
+        assertEquals(0f, mListView.getChildAt(2).getTranslationX(), 0f);
+        assertEquals(ROW_HEIGHT, mListView.getChildAt(2).getLayoutParams().height);
+    }
+
+    @Test
+    public void slideBackCyclesDoNotAllocateRecords() {
+        swipe(2, 200, 2);
+        finishAnimations();
+        int created = mTouchListener.getCreatedCount();
+        int pooled = mTouchListener.getPooledCount();
+
+        for (int i = 0; i < CYCLES; i++) {
+            swipe(2, 200, 2);
+            finishAnimations();
+        }
+        assertEquals(0, mActions);
+        assertEquals(created, mTouchListener.getCreatedCount());
+        assertEquals(pooled, mTouchListener.getPooledCount());
+        assertEquals(0, mTouchListener.getRunningAnimationCount());
+        assertEquals(0f, mListView.getChildAt(2).getTranslationX(), 0f);
+    }
+
+    @Test
+    public void multiSwipeCyclesDoNotAllocateRows() {
+        mTouchListener.setMultiSwipe(true);
+        swipe(2, 800, 4);
+        finishAnimations();
+        int created = mTouchListener.getCreatedCount();
+        int pooled = mTouchListener.getPooledCount();
+
+        for (int i = 0; i < CYCLES; i++) {
+            swipe(2, 800, 4);
+            finishAnimations();
+        }
+        assertEquals(3 * (CYCLES + 1), mActions);
+        assertEquals(created, mTouchListener.getCreatedCount());
+        assertEquals(pooled, mTouchListener.getPooledCount());
+        assertEquals(0, mTouchListener.getPendingDismissCount());
+        assertEquals(0, mTouchListener.getRunningAnimationCount());
+    }
+
+    @Test
+    public void repeatedPositionsGetOneAction() {
+        mTouchListener.performActions(new int[]{3, 3}, SwipeDirections.DIRECTION_FAR_RIGHT);
+        finishAnimations();
+        assertEquals(1, mActions);
+        assertEquals(0, mTouchListener.getPendingDismissCount());
+        assertEquals(0, mTouchListener.getRunningAnimationCount());
+
+        // Later dismisses still restore their rows
+        swipe(2, 800, 2);
+        finishAnimations();
+        assertEquals(2, mActions);
+        assertEquals(0, mTouchListener.getPendingDismissCount());
+        assertEquals(ROW_HEIGHT, mListView.getChildAt(2).getLayoutParams().height);
+    }
+
+    /**
+     * Drag a finger from the left of one row to the given x, ending on another row
+     */
+    private void swipe(int fromRow, float toX, int toRow) {
+        float fromY = fromRow * ROW_HEIGHT + ROW_HEIGHT / 2;
+        float toY = toRow * ROW_HEIGHT + ROW_HEIGHT / 2;
+        long downTime = mEventTime;
+        touch(downTime, MotionEvent.ACTION_DOWN, 10, fromY);
+        int steps = 10;
+        for (int i = 1; i <= steps; i++) {
+            float x = 10 + (toX - 10) * i / steps;
+            // Get going sideways on the first row before moving on to the others
+            float y = i <= steps / 2 ? fromY : fromY + (toY - fromY) * (i - steps / 2) / (steps / 2);
+            touch(downTime, MotionEvent.ACTION_MOVE, x, y);
+        }
+        // Hold still before letting go, so the release isn't a fling
+        mEventTime += 200;
+        touch(downTime, MotionEvent.ACTION_MOVE, toX, toY);
+        touch(downTime, MotionEvent.ACTION_UP, toX, toY);
+    }
+
+    private void touch(long downTime, int action, float x, float y) {
+        mEventTime += 16;
+        MotionEvent event = MotionEvent.obtain(downTime, mEventTime, action, x, y, 0);
+        mTouchListener.onTouch(mListView, event);
+        event.recycle();
+    }
+
+    /**
+     * Run the settle and collapse animations until they are done
+     */
+    private void finishAnimations() {
+        mClock.runToIdle();
+    }
+
+    private static class RowAdapter extends BaseAdapter {
+        @Override
+        public int getCount() {
+            return 20;
+        }
+
+        @Override
+        public Object getItem(int position) {
+            return position;
+        }
+
+        @Override
+        public long getItemId(int position) {
+            return position;
+        }
+
+        @Override
+        public boolean hasStableIds() {
+            return true;
+        }
+
+        @Override
+        public View getView(int position, View convertView, ViewGroup parent) {
+            View view = convertView != null ? convertView : new View(parent.getContext());
+            view.setLayoutParams(new AbsListView.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT, ROW_HEIGHT));
+            return view;
+        }
+    }
+}